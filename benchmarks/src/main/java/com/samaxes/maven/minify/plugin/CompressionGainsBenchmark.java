@@ -0,0 +1,86 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the gzipped size computation, with and without writing the gzipped file. The merged corpus stands in for the
+ * minified file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionGainsBenchmark {
+
+    /** Approximate total size of the source files, in bytes: 1 KB, 64 KB, 1 MB and 50 MB. */
+    @Param({ "1024", "65536", "1048576", "52428800" })
+    public int corpusSize;
+
+    /** Size of the buffer used to read the source files. */
+    @Param({ "512", "4096", "65536" })
+    public int bufferSize;
+
+    /** Whether the gzipped file is written or only its size computed. */
+    @Param({ "false", "true" })
+    public boolean gzip;
+
+    private Corpus corpus;
+
+    private ProcessFilesTask task;
+
+    private File minifiedFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = Corpus.create(Bundle.Type.JS, corpusSize);
+        task = corpus.newTask(Bundle.Type.JS, bufferSize, false, gzip, MinifyMojo.Engine.YUI, null);
+        minifiedFile = corpus.targetFile("bundle.min.js");
+        task.merge(minifiedFile);
+        task.log.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public void logCompressionGains() {
+        task.logCompressionGains(corpus.sourceFiles, minifiedFile, Corpus.LOG);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+
+import com.samaxes.maven.minify.common.ClosureConfig;
+import com.samaxes.maven.minify.common.CssConfig;
+import com.samaxes.maven.minify.common.Separator;
+import com.samaxes.maven.minify.common.SourceFileIndex;
+import com.samaxes.maven.minify.common.YuiConfig;
+import com.samaxes.maven.minify.plugin.MinifyMojo.Engine;
+
+/**
+ * Synthetic corpus of CSS or JavaScript source files used by the benchmarks. The corpus is split into files of at most
+ * {@value #MAX_FILE_SIZE} bytes, so that large corpora exercise the merge of many source files.
+ */
+class Corpus {
+
+    static final String CHARSET = "UTF-8";
+
+    static final int MAX_FILE_SIZE = 64 * 1024;
+
+    /** Log that discards every message, so that console output does not affect the measurements. */
+    static final Log LOG = new DefaultLog(new ConsoleLogger(Logger.LEVEL_DISABLED, "minify"));
+
+    final File webappSourceDir;
+
+    final File webappTargetDir;
+
+    final List<File> sourceFiles = new ArrayList<File>();
+
+    private Corpus(File webappSourceDir, File webappTargetDir) {
+        this.webappSourceDir = webappSourceDir;
+        this.webappTargetDir = webappTargetDir;
+    }
+
+    /**
+     * Creates a corpus in a new temporary directory.
+     *
+     * @param type type of the source files
+     * @param size approximate total size of the source files, in bytes
+     * @return the corpus
+     * @throws IOException when the source files cannot be written
+     */
+    static Corpus create(Bundle.Type type, int size) throws IOException {
+        File root = Files.createTempDirectory("minify-benchmark").toFile();
+        Corpus corpus = new Corpus(new File(root, "src"), new File(root, "target"));
+        File sourceDir = new File(corpus.webappSourceDir, "source");
+        sourceDir.mkdirs();
+        corpus.webappTargetDir.mkdirs();
+
+        int written = 0;
+        int rule = 0;
+        for (int i = 0; written < size; i++) {
+            File file = new File(sourceDir, String.format("file-%05d.%s", i, extension(type)));
+            int fileSize = 0;
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), CHARSET)) {
+                while (fileSize < Math.min(MAX_FILE_SIZE, size - written)) {
+                    String chunk = (type == Bundle.Type.CSS) ? cssRule(rule++) : jsFunction(rule++);
+                    writer.write(chunk);
+                    fileSize += chunk.length();
+                }
+            }
+            written += fileSize;
+            corpus.sourceFiles.add(file);
+        }
+
+        return corpus;
+    }
+
+    /**
+     * Creates a corpus of many small source files in a new temporary directory, each one holding a single rule or
+     * function.
+     *
+     * @param type type of the source files
+     * @param count number of source files
+     * @return the corpus
+     * @throws IOException when the source files cannot be written
+     */
+    static Corpus createFiles(Bundle.Type type, int count) throws IOException {
+        File root = Files.createTempDirectory("minify-benchmark").toFile();
+        Corpus corpus = new Corpus(new File(root, "src"), new File(root, "target"));
+        File sourceDir = new File(corpus.webappSourceDir, "source");
+        sourceDir.mkdirs();
+        corpus.webappTargetDir.mkdirs();
+
+        for (int i = 0; i < count; i++) {
+            File file = new File(sourceDir, String.format("file-%06d.%s", i, extension(type)));
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), CHARSET)) {
+                writer.write((type == Bundle.Type.CSS) ? cssRule(i) : jsFunction(i));
+            }
+            corpus.sourceFiles.add(file);
+        }
+
+        return corpus;
+    }
+
+    /**
+     * Creates a task processing every file of the corpus into a single bundle.
+     *
+     * @param type type of the source files
+     * @param bufferSize size of the buffer used to read source files
+     * @param skipMerge whether to skip the merge step or not
+     * @param gzip whether to write a gzipped copy of the minified files or not
+     * @param engine minify processor engine selected
+     * @param closureConfig Google Closure Compiler configuration, ignored for CSS
+     * @return the task
+     * @throws IOException when the corpus source directory cannot be listed
+     */
+    ProcessFilesTask newTask(Bundle.Type type, int bufferSize, boolean skipMerge, boolean gzip, Engine engine,
+            ClosureConfig closureConfig) throws IOException {
+        return newTask(type, bufferSize, skipMerge, gzip, engine, closureConfig, Collections.<String> emptyList());
+    }
+
+    /**
+     * Creates a task processing the given source files, followed by every other file of the corpus, into a single
+     * bundle.
+     *
+     * @param type type of the source files
+     * @param bufferSize size of the buffer used to read source files
+     * @param skipMerge whether to skip the merge step or not
+     * @param gzip whether to write a gzipped copy of the minified files or not
+     * @param engine minify processor engine selected
+     * @param closureConfig Google Closure Compiler configuration, ignored for CSS
+     * @param sourceFiles the source file names, relative to the corpus source directory
+     * @return the task
+     * @throws IOException when the corpus source directory cannot be listed
+     */
+    ProcessFilesTask newTask(Bundle.Type type, int bufferSize, boolean skipMerge, boolean gzip, Engine engine,
+            ClosureConfig closureConfig, List<String> sourceFiles) throws IOException {
+        YuiConfig yuiConfig = new YuiConfig(-1, true, false, false);
+        List<String> sourceIncludes = Collections.singletonList("**/*." + extension(type));
+        List<String> sourceExcludes = Collections.emptyList();
+        String finalFile = "bundle." + extension(type);
+
+        if (type == Bundle.Type.CSS) {
+            return new ProcessCSSFilesTask(LOG, false, bufferSize, CHARSET, "min", false, skipMerge, false, gzip,
+                    false, null, webappSourceDir.getPath(), webappTargetDir.getPath(), "source", sourceFiles,
+                    sourceIncludes, sourceExcludes, "", finalFile, engine, Separator.NONE, null, yuiConfig,
+                    new CssConfig(false, null, false, 0), null, null, new SourceFileIndex());
+        }
+        return new ProcessJSFilesTask(LOG, false, bufferSize, CHARSET, "min", false, skipMerge, false, gzip, false,
+                null, webappSourceDir.getPath(), webappTargetDir.getPath(), "source", sourceFiles, sourceIncludes,
+                sourceExcludes, "", finalFile, engine, Separator.NONE, null, yuiConfig, closureConfig, null, null,
+                new SourceFileIndex());
+    }
+
+    /**
+     * Gets a file in the target directory.
+     *
+     * @param name the file name
+     * @return the target file
+     */
+    File targetFile(String name) {
+        return new File(webappTargetDir, name);
+    }
+
+    /**
+     * Deletes the corpus and every file produced from it.
+     *
+     * @throws IOException when the files cannot be deleted
+     */
+    void delete() throws IOException {
+        FileUtils.deleteDirectory(webappSourceDir.getParentFile());
+    }
+
+    private static String extension(Bundle.Type type) {
+        return (type == Bundle.Type.CSS) ? "css" : "js";
+    }
+
+    private static String cssRule(int n) {
+        return "/* Rule " + n + " */\n"
+                + ".block-" + n + " .element-" + (n % 97) + ", .block-" + n + ":hover {\n"
+                + "    margin: 0px 0px " + (n % 13) + "px 0px;\n"
+                + "    color: #ffffff;\n"
+                + "    background: url(\"images/sprite-" + (n % 7) + ".png\") no-repeat;\n"
+                + "    font-family: \"Helvetica Neue\", Arial, sans-serif;\n"
+                + "}\n\n";
+    }
+
+    private static String jsFunction(int n) {
+        // Exported, so that the advanced optimizations do not remove the functions as dead code
+        return "/**\n * Function " + n + ".\n"
+                + " * @param {number} value the input value\n"
+                + " * @return {string} the label\n"
+                + " */\n"
+                + "function label" + n + "(value) {\n"
+                + "    var result = value * " + (n % 31) + " + 1;\n"
+                + "    if (result > 100) {\n"
+                + "        return 'large-' + result;\n"
+                + "    }\n"
+                + "    return 'small-' + result;\n"
+                + "}\n"
+                + "window['label" + n + "'] = label" + n + ";\n\n";
+    }
+}
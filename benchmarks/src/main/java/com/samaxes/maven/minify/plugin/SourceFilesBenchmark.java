@@ -0,0 +1,82 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the resolution of the source files of a bundle, which lists half of the files under an aliased path and
+ * includes all of them with a pattern. The time per file should stay flat as the number of files grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SourceFilesBenchmark {
+
+    /** Number of source files. */
+    @Param({ "1000", "10000", "100000" })
+    public int fileCount;
+
+    private Corpus corpus;
+
+    private List<String> sourceFiles;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = Corpus.createFiles(Bundle.Type.JS, fileCount);
+        sourceFiles = new ArrayList<String>();
+        for (int i = 0; i < fileCount; i += 2) {
+            sourceFiles.add("." + File.separator + corpus.sourceFiles.get(i).getName());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public int resolveSourceFiles() throws IOException {
+        ProcessFilesTask task = corpus.newTask(Bundle.Type.JS, 4096, false, false, MinifyMojo.Engine.YUI, null,
+                sourceFiles);
+        // Discard the task messages, so that they do not pile up in memory
+        task.log.flush();
+        return task.getFiles().size();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps the logical name of each output file to its name with a digest of its contents, so that web applications can
+ * reference the content-hashed files and serve them with far-future cache headers. Paths are relative to the web
+ * resources target directory.
+ */
+public class AssetManifest {
+
+    private final Path baseDir;
+
+    private final Map<String, String> entries = new TreeMap<String, String>();
+
+    /**
+     * Asset manifest constructor.
+     *
+     * @param baseDir directory the manifest paths are relative to
+     */
+    public AssetManifest(File baseDir) {
+        this.baseDir = baseDir.getAbsoluteFile().toPath();
+    }
+
+    /**
+     * Adds an output file to the manifest.
+     *
+     * @param file the output file logical name
+     * @param hashedFile the output file name with a digest of its contents
+     */
+    public synchronized void put(File file, File hashedFile) {
+        entries.put(getPath(file), getPath(hashedFile));
+    }
+
+    /**
+     * Writes the manifest as a JSON object.
+     *
+     * @param manifestFile the manifest file
+     * @throws IOException when the manifest cannot be written
+     */
+    public synchronized void write(File manifestFile) throws IOException {
+        File parent = manifestFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create the directory [" + parent + "].");
+        }
+
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(manifestFile), "UTF-8"),
+                "  ")) {
+            writer.beginObject();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writer.name(entry.getKey()).value(entry.getValue());
+            }
+            writer.endObject();
+        }
+    }
+
+    private String getPath(File file) {
+        return baseDir.relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Maven plugin log that keeps its messages in memory until {@link #flush()} is called. Allows concurrent tasks to
+ * produce readable, non-interleaved output without holding a shared lock while they run.
+ */
+public class BufferedLog implements Log {
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR;
+    }
+
+    private static class Entry {
+
+        private final Level level;
+
+        private final CharSequence content;
+
+        private final Throwable error;
+
+        private Entry(Level level, CharSequence content, Throwable error) {
+            this.level = level;
+            this.content = content;
+            this.error = error;
+        }
+
+        private void writeTo(Log log) {
+            switch (level) {
+                case DEBUG:
+                    if (error == null) {
+                        log.debug(content);
+                    } else if (content == null) {
+                        log.debug(error);
+                    } else {
+                        log.debug(content, error);
+                    }
+                    break;
+                case INFO:
+                    if (error == null) {
+                        log.info(content);
+                    } else if (content == null) {
+                        log.info(error);
+                    } else {
+                        log.info(content, error);
+                    }
+                    break;
+                case WARN:
+                    if (error == null) {
+                        log.warn(content);
+                    } else if (content == null) {
+                        log.warn(error);
+                    } else {
+                        log.warn(content, error);
+                    }
+                    break;
+                case ERROR:
+                    if (error == null) {
+                        log.error(content);
+                    } else if (content == null) {
+                        log.error(error);
+                    } else {
+                        log.error(content, error);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private final Log delegate;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Buffered log constructor.
+     *
+     * @param delegate Maven plugin log to which the messages are written when flushed
+     */
+    public BufferedLog(Log delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Writes all buffered messages, in order, to the delegate log. The delegate is locked during the write so that
+     * messages from different buffers are never interleaved.
+     */
+    public void flush() {
+        List<Entry> pending;
+        synchronized (entries) {
+            pending = new ArrayList<Entry>(entries);
+            entries.clear();
+        }
+
+        synchronized (delegate) {
+            for (Entry entry : pending) {
+                entry.writeTo(delegate);
+            }
+        }
+    }
+
+    private void add(Level level, CharSequence content, Throwable error) {
+        synchronized (entries) {
+            entries.add(new Entry(level, content, error));
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return delegate.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(CharSequence content) {
+        if (isDebugEnabled()) {
+            add(Level.DEBUG, content, null);
+        }
+    }
+
+    @Override
+    public void debug(CharSequence content, Throwable error) {
+        if (isDebugEnabled()) {
+            add(Level.DEBUG, content, error);
+        }
+    }
+
+    @Override
+    public void debug(Throwable error) {
+        if (isDebugEnabled()) {
+            add(Level.DEBUG, null, error);
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return delegate.isInfoEnabled();
+    }
+
+    @Override
+    public void info(CharSequence content) {
+        add(Level.INFO, content, null);
+    }
+
+    @Override
+    public void info(CharSequence content, Throwable error) {
+        add(Level.INFO, content, error);
+    }
+
+    @Override
+    public void info(Throwable error) {
+        add(Level.INFO, null, error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return delegate.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(CharSequence content) {
+        add(Level.WARN, content, null);
+    }
+
+    @Override
+    public void warn(CharSequence content, Throwable error) {
+        add(Level.WARN, content, error);
+    }
+
+    @Override
+    public void warn(Throwable error) {
+        add(Level.WARN, null, error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return delegate.isErrorEnabled();
+    }
+
+    @Override
+    public void error(CharSequence content) {
+        add(Level.ERROR, content, null);
+    }
+
+    @Override
+    public void error(CharSequence content, Throwable error) {
+        add(Level.ERROR, content, error);
+    }
+
+    @Override
+    public void error(Throwable error) {
+        add(Level.ERROR, null, error);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Persistent cache of the files produced by a task. Entries are stored in a directory named after a digest of
+ * everything that affects the output: the ordered source files contents, the engine and its configuration and the
+ * charset. Entries are restored under the output file names given by the caller, so everything the output depends on,
+ * its file names included, has to be part of the key.
+ */
+public class BuildCache {
+
+    private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Classes whose jar files are part of every key: the plugin and its minify engines.
+     */
+    private static final String[] KEY_CLASSES = { "com.samaxes.maven.minify.common.BuildCache",
+            "com.yahoo.platform.yui.compressor.CssCompressor", "com.google.javascript.jscomp.Compiler" };
+
+    private static String codeFingerprint;
+
+    private final File directory;
+
+    /**
+     * Build cache constructor.
+     *
+     * @param directory directory where the cache entries are stored
+     */
+    public BuildCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a new cache key. The plugin version, along with the size and modification time of the jar files of the
+     * plugin and its engines, is always part of the key, so that upgrading the plugin or an engine, or rebuilding a
+     * snapshot of the plugin, never restores stale output.
+     *
+     * @return a new cache key
+     */
+    public Key newKey() {
+        Key key = new Key();
+        key.update(String.valueOf(BuildCache.class.getPackage().getImplementationVersion()));
+        key.update(getCodeFingerprint());
+        return key;
+    }
+
+    private static synchronized String getCodeFingerprint() {
+        if (codeFingerprint == null) {
+            StringBuilder fingerprint = new StringBuilder();
+            for (String className : KEY_CLASSES) {
+                fingerprint.append(className).append(':');
+                try {
+                    CodeSource codeSource = Class.forName(className, false, BuildCache.class.getClassLoader())
+                            .getProtectionDomain().getCodeSource();
+                    File file = (codeSource == null) ? null : new File(codeSource.getLocation().toURI());
+                    if (file != null && file.isFile()) {
+                        fingerprint.append(file.length()).append(':').append(file.lastModified());
+                    }
+                } catch (ClassNotFoundException | URISyntaxException | IllegalArgumentException e) {
+                    // Classes loaded from elsewhere than a local jar file only count by their name
+                }
+                fingerprint.append(';');
+            }
+            codeFingerprint = fingerprint.toString();
+        }
+        return codeFingerprint;
+    }
+
+    /**
+     * Copies the cached files of an entry to the given output files.
+     *
+     * @param key the entry key
+     * @param outputFiles the files to restore
+     * @return {@code true} if every file was found in the cache and restored, {@code false} otherwise
+     * @throws IOException when the files cannot be copied
+     */
+    public boolean restore(String key, List<File> outputFiles) throws IOException {
+        File entry = new File(directory, key);
+
+        for (int i = 0; i < outputFiles.size(); i++) {
+            if (!new File(entry, String.valueOf(i)).isFile()) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < outputFiles.size(); i++) {
+            FileUtils.copyFile(new File(entry, String.valueOf(i)), outputFiles.get(i));
+        }
+        // Keep track of the last access for the least recently used eviction
+        entry.setLastModified(System.currentTimeMillis());
+
+        return true;
+    }
+
+    /**
+     * Stores a copy of the output files under the given key. The entry is written to a temporary directory first and
+     * then moved into place, so that concurrent builds never observe a partial entry.
+     *
+     * @param key the entry key
+     * @param outputFiles the files to store
+     * @throws IOException when the files cannot be copied
+     */
+    public void store(String key, List<File> outputFiles) throws IOException {
+        File entry = new File(directory, key);
+        File temp = new File(directory, key + "-" + UUID.randomUUID());
+
+        if (entry.isDirectory() || !temp.mkdirs()) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < outputFiles.size(); i++) {
+                FileUtils.copyFile(outputFiles.get(i), new File(temp, String.valueOf(i)));
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+            // Another build stored the same entry in the meantime or the file system cannot move it atomically
+        } finally {
+            if (temp.exists()) {
+                FileUtils.deleteDirectory(temp);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache size is no larger than the given limit.
+     *
+     * @param maxSize maximum size of the cache, in bytes
+     * @return the number of deleted entries
+     * @throws IOException when an entry cannot be deleted
+     */
+    public int evict(long maxSize) throws IOException {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return 0;
+        }
+
+        // Most recently used entries first
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o2.lastModified(), o1.lastModified());
+            }
+        });
+
+        long size = 0;
+        int evicted = 0;
+        for (File entry : entries) {
+            if (!entry.isDirectory() || entry.getName().indexOf('-') != -1) {
+                // Not an entry or an entry still being stored
+                continue;
+            }
+            size += FileUtils.sizeOfDirectory(entry);
+            if (size > maxSize) {
+                FileUtils.deleteDirectory(entry);
+                evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Digest of everything that affects the output of a task.
+     */
+    public static class Key {
+
+        private final MessageDigest digest;
+
+        private Key() {
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-1 digest is not available.", e);
+            }
+        }
+
+        /**
+         * Adds a value to the key.
+         *
+         * @param value the value to add
+         * @return this key
+         */
+        public Key update(Object value) {
+            byte[] bytes = String.valueOf(value).getBytes(KEY_CHARSET);
+
+            digest.update(bytes);
+            // Separate values, so that ("ab", "c") and ("a", "bc") produce different keys
+            digest.update((byte) 0);
+            return this;
+        }
+
+        /**
+         * Adds a file contents to the key. The file name is not part of the key.
+         *
+         * @param file the file to add
+         * @param bufferSize size of the buffer used to read the file
+         * @return this key
+         * @throws IOException when the file cannot be read
+         */
+        public Key update(File file, int bufferSize) throws IOException {
+            update(file.length());
+            try (InputStream in = new FileInputStream(file)) {
+                byte[] buffer = new byte[bufferSize];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            digest.update((byte) 0);
+            return this;
+        }
+
+        /**
+         * Completes the key computation. The key cannot be updated afterwards.
+         *
+         * @return the hexadecimal representation of the key
+         */
+        public String digest() {
+            StringBuilder hex = new StringBuilder();
+
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return hex.toString();
+        }
+    }
+}
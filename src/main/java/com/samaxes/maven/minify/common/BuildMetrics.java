@@ -0,0 +1,107 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Metrics of the bundles processed by an execution, written as a JSON document so that build dashboards can trend the
+ * minification cost and the bundle sizes across builds. Bundles are sorted by name, so that documents of successive
+ * builds can be compared line by line.
+ */
+public class BuildMetrics {
+
+    private final Map<String, BundleMetrics> bundles = new TreeMap<String, BundleMetrics>();
+
+    /**
+     * Reads the metrics written by a previous build.
+     *
+     * @param metricsFile the metrics file
+     * @return the metrics
+     * @throws IOException when the metrics cannot be read
+     */
+    public static BuildMetrics read(File metricsFile) throws IOException {
+        BuildMetrics buildMetrics = new BuildMetrics();
+
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(metricsFile), "UTF-8"))) {
+            Object document = JsonReader.read(reader);
+            if (!(document instanceof Map) || !(((Map<?, ?>) document).get("bundles") instanceof List)) {
+                throw new IOException("Invalid metrics file [" + metricsFile + "].");
+            }
+            for (Object bundle : (List<?>) ((Map<?, ?>) document).get("bundles")) {
+                buildMetrics.put(BundleMetrics.fromJson(bundle));
+            }
+        }
+
+        return buildMetrics;
+    }
+
+    /**
+     * Returns the metrics of a bundle.
+     *
+     * @param name the bundle name
+     * @return the bundle metrics, or {@code null} if there are no metrics for the bundle
+     */
+    public synchronized BundleMetrics get(String name) {
+        return bundles.get(name);
+    }
+
+    /**
+     * Adds the metrics of a bundle, replacing the ones of a previous processing of the same bundle.
+     *
+     * @param bundleMetrics the bundle metrics
+     */
+    public synchronized void put(BundleMetrics bundleMetrics) {
+        bundles.put(bundleMetrics.getName(), bundleMetrics);
+    }
+
+    /**
+     * Writes the metrics as a JSON document.
+     *
+     * @param metricsFile the metrics file
+     * @throws IOException when the metrics cannot be written
+     */
+    public synchronized void write(File metricsFile) throws IOException {
+        File parent = metricsFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create the directory [" + parent + "].");
+        }
+
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(metricsFile), "UTF-8"),
+                "  ")) {
+            writer.beginObject();
+            writer.name("bundles").beginArray();
+            for (BundleMetrics bundleMetrics : bundles.values()) {
+                bundleMetrics.writeTo(writer);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+}
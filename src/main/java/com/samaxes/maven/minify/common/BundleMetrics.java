@@ -0,0 +1,248 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Timings and sizes recorded while a bundle is processed. Methods are thread-safe, since the source files of a bundle
+ * may be minified concurrently when the merge step is skipped.
+ */
+public class BundleMetrics {
+
+    /**
+     * Phase of the processing of a bundle.
+     */
+    public static enum Phase {
+        /** Resolution of the bundle source files */
+        DISCOVERY,
+        /** Merge of the source files, when the minify step is skipped */
+        MERGE,
+        /** Minification, including the merge of the source files which are streamed into the minifier */
+        MINIFY,
+        /** Compression of the minified files */
+        GZIP,
+        /** Restoration or storage of the output files in the build cache */
+        WRITE;
+    }
+
+    private final String name;
+
+    private final String type;
+
+    private final String engine;
+
+    private final long[] durations = new long[Phase.values().length];
+
+    private final Map<String, Long> sourceSizes = new LinkedHashMap<String, Long>();
+
+    private long inputSize;
+
+    private long outputSize;
+
+    private long gzipSize;
+
+    private boolean gzipSizeKnown = true;
+
+    private int outputCount;
+
+    private int restoredCount;
+
+    /**
+     * Bundle metrics constructor.
+     *
+     * @param name the bundle final file path, relative to the web resources target directory
+     * @param type the type of the bundle source files
+     * @param engine the minify engine of the bundle
+     */
+    public BundleMetrics(String name, String type, String engine) {
+        this.name = name;
+        this.type = type;
+        this.engine = engine;
+    }
+
+    /**
+     * Reads the sizes of a bundle from the JSON object written by {@link #writeTo(JsonWriter)}. Timings are not read.
+     *
+     * @param object the JSON object
+     * @return the bundle metrics
+     * @throws IOException when the object is not a bundle metrics object
+     */
+    static BundleMetrics fromJson(Object object) throws IOException {
+        try {
+            Map<?, ?> bundle = (Map<?, ?>) object;
+            Map<?, ?> sizes = (Map<?, ?>) bundle.get("sizes");
+            BundleMetrics bundleMetrics = new BundleMetrics((String) bundle.get("name"), (String) bundle.get("type"),
+                    (String) bundle.get("engine"));
+
+            for (Object source : (List<?>) bundle.get("sources")) {
+                bundleMetrics.addSource((String) ((Map<?, ?>) source).get("path"),
+                        ((Number) ((Map<?, ?>) source).get("size")).longValue());
+            }
+            bundleMetrics.outputSize = ((Number) sizes.get("output")).longValue();
+            bundleMetrics.gzipSizeKnown = sizes.containsKey("gzip");
+            bundleMetrics.gzipSize = (bundleMetrics.gzipSizeKnown) ? ((Number) sizes.get("gzip")).longValue() : 0;
+            bundleMetrics.outputCount = ((Number) bundle.get("outputs")).intValue();
+
+            return bundleMetrics;
+        } catch (ClassCastException | NullPointerException e) {
+            throw new IOException("Invalid bundle metrics.", e);
+        }
+    }
+
+    /**
+     * Adds time spent in a phase.
+     *
+     * @param phase the phase
+     * @param nanos the time spent, in nanoseconds
+     */
+    public synchronized void addDuration(Phase phase, long nanos) {
+        durations[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Adds a source file of the bundle.
+     *
+     * @param path the source file path, relative to the web resources source directory
+     * @param size the source file size, in bytes
+     */
+    public synchronized void addSource(String path, long size) {
+        Long previousSize = sourceSizes.put(path, size);
+        inputSize += size - ((previousSize == null) ? 0 : previousSize);
+    }
+
+    /**
+     * Adds an output file of the bundle: the minified file, or the merged file when the minify step is skipped.
+     *
+     * @param size the output file size, in bytes
+     * @param gzipSize the gzipped output file size in bytes, or {@code -1} if it was not computed
+     * @param restored whether the output file was restored from the build cache
+     */
+    public synchronized void addOutput(long size, long gzipSize, boolean restored) {
+        outputSize += size;
+        if (gzipSize < 0) {
+            gzipSizeKnown = false;
+        } else {
+            this.gzipSize += gzipSize;
+        }
+        outputCount++;
+        if (restored) {
+            restoredCount++;
+        }
+    }
+
+    /**
+     * Gets the name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of output files.
+     *
+     * @return the number of output files
+     */
+    public synchronized int getOutputCount() {
+        return outputCount;
+    }
+
+    /**
+     * Gets the total size of the source files.
+     *
+     * @return the input size, in bytes
+     */
+    public synchronized long getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Gets the total size of the output files.
+     *
+     * @return the output size, in bytes
+     */
+    public synchronized long getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Gets the total size of the gzipped output files.
+     *
+     * @return the gzipped output size in bytes, or {@code -1} if it was not computed for every output file
+     */
+    public synchronized long getGzipSize() {
+        return (gzipSizeKnown && outputCount > 0) ? gzipSize : -1;
+    }
+
+    /**
+     * Gets the size of each source file, in order.
+     *
+     * @return the source file sizes in bytes, keyed by path
+     */
+    public synchronized Map<String, Long> getSourceSizes() {
+        return new LinkedHashMap<String, Long>(sourceSizes);
+    }
+
+    /**
+     * Writes the metrics as a JSON object.
+     *
+     * @param writer the JSON writer
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("name").value(name);
+        writer.name("type").value(type);
+        writer.name("engine").value(engine);
+        writer.name("files").value(sourceSizes.size());
+        writer.name("outputs").value(outputCount);
+        writer.name("restored").value(restoredCount);
+
+        writer.name("sizes").beginObject();
+        writer.name("input").value(inputSize);
+        writer.name("output").value(outputSize);
+        if (getGzipSize() >= 0) {
+            writer.name("gzip").value(gzipSize);
+        }
+        writer.endObject();
+
+        // Milliseconds, with a microsecond precision
+        writer.name("timings").beginObject();
+        for (Phase phase : Phase.values()) {
+            writer.name(phase.name().toLowerCase(Locale.ENGLISH)).value(durations[phase.ordinal()] / 1000 / 1000.0);
+        }
+        writer.endObject();
+
+        writer.name("sources").beginArray();
+        for (Map.Entry<String, Long> source : sourceSizes.entrySet()) {
+            writer.beginObject();
+            writer.name("path").value(source.getKey());
+            writer.name("size").value(source.getValue());
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+}
@@ -35,17 +35,22 @@ public class ClosureConfig {
 
     private final List<SourceFile> externs;
 
+    private final boolean separateInputs;
+
     /**
      * Init Closure Compiler values.
      *
      * @param language the version of ECMAScript used to report errors in the code
      * @param compilationLevel the degree of compression and optimization to apply to JavaScript
      * @param externs preserve symbols that are defined outside of the code you are compiling
+     * @param separateInputs compile each source file as a separate input instead of the merged source
      */
-    public ClosureConfig(LanguageMode language, CompilationLevel compilationLevel, List<SourceFile> externs) {
+    public ClosureConfig(LanguageMode language, CompilationLevel compilationLevel, List<SourceFile> externs,
+            boolean separateInputs) {
         this.language = language;
         this.compilationLevel = compilationLevel;
         this.externs = externs;
+        this.separateInputs = separateInputs;
     }
 
     /**
@@ -74,4 +79,13 @@ public class ClosureConfig {
     public List<SourceFile> getExterns() {
         return externs;
     }
+
+    /**
+     * Gets the separateInputs.
+     *
+     * @return the separateInputs
+     */
+    public boolean isSeparateInputs() {
+        return separateInputs;
+    }
 }
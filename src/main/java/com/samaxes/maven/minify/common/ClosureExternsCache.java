@@ -0,0 +1,75 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.javascript.jscomp.SourceFile;
+
+/**
+ * JVM-wide cache of the Closure Compiler externs. Maven keeps the plugin class realm across the modules of a reactor
+ * build, so every execution and bundle sharing the same extern file reads it from disk only once. An entry is reloaded
+ * as soon as the file size, modification time or charset changes.
+ */
+public final class ClosureExternsCache {
+
+    private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<String, Entry>();
+
+    private static final class Entry {
+
+        private final String stamp;
+
+        private final SourceFile sourceFile;
+
+        private Entry(String stamp, SourceFile sourceFile) {
+            this.stamp = stamp;
+            this.sourceFile = sourceFile;
+        }
+    }
+
+    private ClosureExternsCache() {
+    }
+
+    /**
+     * Gets the extern source file, loading it only if it is not cached yet or it has changed since it was cached.
+     *
+     * @param file the extern file
+     * @param charset the extern file charset
+     * @return the extern source file, with its contents already in memory
+     * @throws IOException when the extern file cannot be read
+     */
+    public static SourceFile get(File file, Charset charset) throws IOException {
+        String path = file.getCanonicalPath();
+        String stamp = file.length() + ":" + file.lastModified() + ":" + charset.name();
+
+        Entry entry = ENTRIES.get(path);
+        if (entry == null || !entry.stamp.equals(stamp)) {
+            String code = new String(Files.readAllBytes(file.toPath()), charset);
+            entry = new Entry(stamp, SourceFile.fromCode(file.getPath(), code));
+            ENTRIES.put(path, entry);
+        }
+
+        return entry.sourceFile;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+/**
+ * Configuration of the CSS processing applied to the source files while they are merged and before the minify engine,
+ * whichever engine is used.
+ */
+public class CssConfig {
+
+    private final boolean optimize;
+
+    private final TokenIndex tokenIndex;
+
+    private final boolean rewriteUrls;
+
+    private final int inlineMaxSize;
+
+    private final DataUriCache dataUriCache;
+
+    /**
+     * Init CssConfig values.
+     *
+     * @param optimize merge duplicate rules and drop overridden declarations before minifying
+     * @param tokenIndex index of the names used by the web resources, against which the unused rules are removed, or
+     *        {@code null} to keep every rule
+     * @param rewriteUrls rewrite the relative URLs of the source files for the directory of their output file
+     * @param inlineMaxSize maximum size in bytes of the assets inlined as data URIs, or {@code 0} to inline none
+     */
+    public CssConfig(boolean optimize, TokenIndex tokenIndex, boolean rewriteUrls, int inlineMaxSize) {
+        this.optimize = optimize;
+        this.tokenIndex = tokenIndex;
+        this.rewriteUrls = rewriteUrls;
+        this.inlineMaxSize = inlineMaxSize;
+        this.dataUriCache = (inlineMaxSize > 0) ? new DataUriCache() : null;
+    }
+
+    /**
+     * Gets the optimize.
+     *
+     * @return the optimize
+     */
+    public boolean isOptimize() {
+        return optimize;
+    }
+
+    /**
+     * Gets the tokenIndex.
+     *
+     * @return the tokenIndex
+     */
+    public TokenIndex getTokenIndex() {
+        return tokenIndex;
+    }
+
+    /**
+     * Gets the rewriteUrls.
+     *
+     * @return the rewriteUrls
+     */
+    public boolean isRewriteUrls() {
+        return rewriteUrls;
+    }
+
+    /**
+     * Gets the inlineMaxSize.
+     *
+     * @return the inlineMaxSize
+     */
+    public int getInlineMaxSize() {
+        return inlineMaxSize;
+    }
+
+    /**
+     * Gets the dataUriCache, shared by the stylesheets of an execution.
+     *
+     * @return the dataUriCache, or {@code null} if no asset is inlined
+     */
+    public DataUriCache getDataUriCache() {
+        return dataUriCache;
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streaming CSS minifier. The stylesheet is read once, character by character, and written as it is read: comments
+ * are removed, except the ones starting with {@code /*!}, whitespace is collapsed and dropped where it is not
+ * significant, the last semicolon of each block is dropped, zero lengths lose their unit and six-digit colors are
+ * shortened to three digits when possible. Rules without declarations are removed, as the YUI Compressor does.
+ * <p>
+ * Only the selector or at-rule being read is held in memory, until its block is known not to be empty, so memory use
+ * does not depend on the size of the stylesheet. The output only depends on the input.
+ */
+public class CssMinifier {
+
+    /**
+     * At-rules whose block holds rules instead of declarations.
+     */
+    private static final Set<String> RULE_BLOCK_AT_RULES = new HashSet<String>(Arrays.asList("media", "supports",
+            "document", "-moz-document", "container", "layer"));
+
+    /**
+     * Length units that can be dropped from a zero length.
+     */
+    private static final Set<String> LENGTH_UNITS = new HashSet<String>(Arrays.asList("px", "em", "rem", "ex", "ch",
+            "vw", "vh", "vmin", "vmax", "cm", "mm", "q", "in", "pt", "pc"));
+
+    /**
+     * Maximum length of the property names and identifiers kept to recognize properties and {@code url(} functions.
+     */
+    private static final int MAX_NAME_LENGTH = 64;
+
+    private final PushbackReader in;
+
+    private final Writer out;
+
+    /**
+     * Whether each open block holds rules or declarations, outermost first. The stylesheet itself holds rules.
+     */
+    private boolean[] ruleBlocks = { true, false, false, false, false, false, false, false };
+
+    private int depth;
+
+    /**
+     * Selector or at-rule being read in a block holding rules, written once its block has content.
+     */
+    private final StringBuilder prelude = new StringBuilder();
+
+    /**
+     * Selector or at-rule of the innermost block, followed by its opening brace, until the block has content.
+     */
+    private String pendingBlock;
+
+    private boolean pendingSemicolon;
+
+    private boolean pendingSpace;
+
+    /**
+     * Last character written in the current statement, {@code 0} at the start of a statement.
+     */
+    private int last;
+
+    private int parenDepth;
+
+    private final StringBuilder word = new StringBuilder();
+
+    private final StringBuilder property = new StringBuilder();
+
+    private boolean inValue;
+
+    /**
+     * CSS minifier constructor.
+     *
+     * @param in the stylesheet to minify
+     * @param out the writer the minified stylesheet is written to
+     */
+    public CssMinifier(Reader in, Writer out) {
+        this.in = new PushbackReader(in, 2);
+        this.out = out;
+    }
+
+    /**
+     * Minifies the stylesheet.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void minify() throws IOException {
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '/' && peek() == '*') {
+                in.read();
+                readComment();
+                continue;
+            }
+            if (isWhitespace(c)) {
+                pendingSpace = true;
+                word.setLength(0);
+                continue;
+            }
+
+            boolean space = pendingSpace;
+            pendingSpace = false;
+            switch (c) {
+                case '{':
+                    openBlock();
+                    break;
+                case '}':
+                    closeBlock();
+                    break;
+                case ';':
+                    endStatement();
+                    break;
+                case '"':
+                case '\'':
+                    writeSpace(space, c);
+                    readString(c);
+                    word.setLength(0);
+                    break;
+                default:
+                    writeSpace(space, c);
+                    readToken(c);
+                    break;
+            }
+        }
+
+        // Unterminated statement or block, kept as it is
+        if (prelude.length() > 0) {
+            writeBlock();
+            out.append(prelude);
+        }
+        writeBlock();
+        out.flush();
+    }
+
+    private void openBlock() throws IOException {
+        if (ruleBlocks[depth]) {
+            String selector = prelude.toString();
+            prelude.setLength(0);
+            // The enclosing block has content
+            writeBlock();
+            pendingBlock = selector + '{';
+            pushBlock(selector.startsWith("@") && isRuleBlockAtRule(selector));
+        } else {
+            // Nested block in a block of declarations, written as it is
+            write('{');
+            pushBlock(false);
+        }
+        startStatement();
+    }
+
+    private void closeBlock() throws IOException {
+        if (prelude.length() > 0) {
+            // Statement missing its semicolon before the end of the block
+            writeBlock();
+            out.append(prelude);
+            prelude.setLength(0);
+        }
+        pendingSemicolon = false;
+        if (depth == 0) {
+            // Unbalanced closing brace
+            writeBlock();
+            out.write('}');
+        } else if (pendingBlock != null) {
+            // Empty block, removed with its selector
+            pendingBlock = null;
+            depth--;
+        } else {
+            out.write('}');
+            depth--;
+        }
+        startStatement();
+    }
+
+    private void endStatement() throws IOException {
+        if (ruleBlocks[depth]) {
+            if (prelude.length() > 0) {
+                writeBlock();
+                out.append(prelude).append(';');
+                prelude.setLength(0);
+            }
+        } else if (last != 0) {
+            // Dropped if the block ends after it
+            pendingSemicolon = true;
+        }
+        startStatement();
+    }
+
+    private void startStatement() {
+        last = 0;
+        parenDepth = 0;
+        inValue = false;
+        word.setLength(0);
+        property.setLength(0);
+    }
+
+    private void readToken(int c) throws IOException {
+        boolean declaration = !ruleBlocks[depth];
+        if (declaration && !inValue) {
+            if (c == ':') {
+                inValue = true;
+            } else if (property.length() < MAX_NAME_LENGTH) {
+                property.append(Character.toLowerCase((char) c));
+            }
+        }
+
+        if (declaration && inValue && isNumberStart(c)) {
+            readNumber(c);
+        } else if (declaration && inValue && c == '#') {
+            readColor();
+        } else if (c == '(') {
+            boolean url = word.length() == 3 && word.toString().equalsIgnoreCase("url");
+            write('(');
+            parenDepth++;
+            if (url) {
+                readUrl();
+            }
+        } else {
+            if (c == ')' && parenDepth > 0) {
+                parenDepth--;
+            }
+            write((char) c);
+        }
+
+        if (isNameChar(c) && word.length() < MAX_NAME_LENGTH) {
+            word.append((char) c);
+        } else {
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * Writes a number and its unit, dropping the unit of zero lengths. Units are kept inside functions, where
+     * {@code calc()} needs them, and in the {@code flex} shorthand, where a unitless zero is not a length.
+     */
+    private void readNumber(int c) throws IOException {
+        StringBuilder number = new StringBuilder().append((char) c);
+        boolean dot = c == '.';
+        int next;
+        while ((next = in.read()) != -1 && (isDigit(next) || (next == '.' && !dot))) {
+            number.append((char) next);
+            dot |= next == '.';
+        }
+        int start = number.length();
+        while (next != -1 && (isLetter(next) || next == '%')) {
+            number.append((char) next);
+            next = in.read();
+        }
+        if (next != -1) {
+            in.unread(next);
+        }
+
+        boolean zero = isDigit(number.charAt(start - 1));
+        for (int i = 0; i < start; i++) {
+            char digit = number.charAt(i);
+            zero &= !isDigit(digit) || digit == '0';
+        }
+        if (zero && parenDepth == 0 && LENGTH_UNITS.contains(number.substring(start).toLowerCase(Locale.ENGLISH))
+                && !property.toString().endsWith("flex")) {
+            write('0');
+        } else {
+            write(number);
+        }
+    }
+
+    /**
+     * Writes a hexadecimal color, shortened to three digits when each of its components repeats the same digit. Colors
+     * of the Internet Explorer filters are kept as they are, as the filters do not read shortened colors.
+     */
+    private void readColor() throws IOException {
+        StringBuilder color = new StringBuilder("#");
+        int next;
+        while ((next = in.read()) != -1 && isNameChar(next) && color.length() <= 7) {
+            color.append((char) next);
+        }
+        if (next != -1) {
+            in.unread(next);
+        }
+
+        if (color.length() == 7 && isHex(color) && property.indexOf("filter") == -1
+                && Character.toLowerCase(color.charAt(1)) == Character.toLowerCase(color.charAt(2))
+                && Character.toLowerCase(color.charAt(3)) == Character.toLowerCase(color.charAt(4))
+                && Character.toLowerCase(color.charAt(5)) == Character.toLowerCase(color.charAt(6))) {
+            write(new StringBuilder(4).append('#').append(color.charAt(1)).append(color.charAt(3))
+                    .append(color.charAt(5)));
+        } else {
+            write(color);
+        }
+    }
+
+    /**
+     * Copies the argument of a {@code url(} function. Unquoted URLs are copied as they are, without their surrounding
+     * whitespace, since they may contain characters starting comments or ending statements.
+     */
+    private void readUrl() throws IOException {
+        int c;
+        while ((c = in.read()) != -1 && isWhitespace(c)) {
+            // Leading whitespace
+        }
+        if (c == -1 || c == '"' || c == '\'' || c == ')') {
+            // Quoted or empty URL, read as any other token
+            if (c != -1) {
+                in.unread(c);
+            }
+            return;
+        }
+
+        StringBuilder whitespace = new StringBuilder();
+        do {
+            if (isWhitespace(c)) {
+                whitespace.append((char) c);
+                continue;
+            }
+            if (c == ')') {
+                write(')');
+                parenDepth--;
+                return;
+            }
+            write(whitespace);
+            whitespace.setLength(0);
+            write((char) c);
+            if (c == '\\' && (c = in.read()) != -1) {
+                write((char) c);
+            }
+        } while ((c = in.read()) != -1);
+    }
+
+    private void readString(int quote) throws IOException {
+        write((char) quote);
+        int c;
+        while ((c = in.read()) != -1) {
+            write((char) c);
+            if (c == '\\') {
+                if ((c = in.read()) != -1) {
+                    write((char) c);
+                }
+            } else if (c == quote) {
+                break;
+            }
+        }
+    }
+
+    private void readComment() throws IOException {
+        boolean preserved = peek() == '!';
+        boolean direct = preserved && ruleBlocks[depth] && prelude.length() == 0;
+        if (direct) {
+            // Comment between rules, written even if the next rule is empty
+            writeBlock();
+        }
+        if (preserved) {
+            writeComment("/*", direct);
+        }
+
+        int previous = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (preserved) {
+                writeComment(String.valueOf((char) c), direct);
+            }
+            if (previous == '*' && c == '/') {
+                break;
+            }
+            previous = c;
+        }
+    }
+
+    private void writeComment(String s, boolean direct) throws IOException {
+        if (direct) {
+            out.write(s);
+        } else {
+            write(s);
+        }
+    }
+
+    /**
+     * Writes a space if the whitespace read before a character is significant.
+     */
+    private void writeSpace(boolean space, int c) throws IOException {
+        if (!space || last == 0 || last == ',' || c == ',' || last == '(' || c == ')') {
+            return;
+        }
+        if (!ruleBlocks[depth]) {
+            if (last == ':' || c == ':' || last == '!' || c == '!') {
+                return;
+            }
+        } else if (prelude.length() > 0 && prelude.charAt(0) != '@') {
+            // Selector combinators
+            if (last == '>' || last == '+' || last == '~' || c == '>' || c == '+' || c == '~') {
+                return;
+            }
+        }
+        write(' ');
+    }
+
+    private void write(char c) throws IOException {
+        if (ruleBlocks[depth]) {
+            prelude.append(c);
+        } else {
+            writeBlock();
+            if (pendingSemicolon) {
+                out.write(';');
+                pendingSemicolon = false;
+            }
+            out.write(c);
+        }
+        last = c;
+    }
+
+    private void write(CharSequence s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the selector of the innermost block, which has content.
+     */
+    private void writeBlock() throws IOException {
+        if (pendingBlock != null) {
+            out.write(pendingBlock);
+            pendingBlock = null;
+        }
+    }
+
+    private void pushBlock(boolean rules) {
+        if (++depth == ruleBlocks.length) {
+            ruleBlocks = Arrays.copyOf(ruleBlocks, 2 * ruleBlocks.length);
+        }
+        ruleBlocks[depth] = rules;
+    }
+
+    private int peek() throws IOException {
+        int c = in.read();
+        if (c != -1) {
+            in.unread(c);
+        }
+        return c;
+    }
+
+    private boolean isNumberStart(int c) throws IOException {
+        if (last != 0 && (isNameChar(last) || last == '#' || last == '.')) {
+            // Part of an identifier, e.g. translate3d
+            return false;
+        }
+        if (isDigit(c)) {
+            return true;
+        }
+        if (c == '.' || c == '-' || c == '+') {
+            int next = peek();
+            return isDigit(next) || (c != '.' && next == '.');
+        }
+        return false;
+    }
+
+    private static boolean isRuleBlockAtRule(String atRule) {
+        int end = 1;
+        while (end < atRule.length() && isNameChar(atRule.charAt(end))) {
+            end++;
+        }
+        String name = atRule.substring(1, end).toLowerCase(Locale.ENGLISH);
+        return RULE_BLOCK_AT_RULES.contains(name) || name.endsWith("keyframes");
+    }
+
+    private static boolean isHex(CharSequence color) {
+        for (int i = 1; i < color.length(); i++) {
+            if (Character.digit(color.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isNameChar(int c) {
+        return isLetter(c) || isDigit(c) || c == '-' || c == '_' || c == '\\' || c >= 0x80;
+    }
+}
@@ -0,0 +1,709 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Structural CSS optimizer. The stylesheet is parsed into a tree of rules, rewritten with changes that cannot alter
+ * which declaration applies to an element, and written back:
+ * <ul>
+ * <li>a rule is removed when an identical rule, with the same selector and declarations, comes later in the same
+ * conditional context, since the later one always takes precedence</li>
+ * <li>a declaration is removed when a later declaration of the same property with the same importance has the same
+ * value, or when both values are made of CSS 2.1 keywords, lengths and colors that every browser understands; other
+ * earlier values are kept, as they may be the fallbacks of the later ones, e.g. {@code display:-webkit-box} before
+ * {@code display:flex}</li>
+ * <li>adjacent rules with the same selector are merged, and so are adjacent rules with the same declarations, unless
+ * one of their selectors could be unknown to a browser and invalidate the whole group</li>
+ * <li>adjacent conditional at-rules with the same condition, e.g. {@code @media print}, are folded into one</li>
+ * </ul>
+ * When an index of the names used by the web resources is given, the selectors referring to a class or an id found
+ * nowhere in them are removed first, along with the rules left without selectors. Selectors are only matched outside
+ * their functional pseudo-classes and attribute selectors, so {@code :not(.unused)} or {@code [class~=unused]} are
+ * kept.
+ * <p>
+ * Each pass goes once through the rules, looking rules up by hash, so the time taken grows linearly with the size of
+ * the stylesheet. At-rules other than the conditional ones are kept as they are.
+ */
+public class CssOptimizer {
+
+    /**
+     * At-rules whose block holds rules, applying under the condition given by their prelude.
+     */
+    private static final Set<String> CONDITIONAL_AT_RULES = new HashSet<String>(Arrays.asList("media", "supports",
+            "document", "-moz-document"));
+
+    /**
+     * Pseudo-classes and pseudo-elements known to every browser, which do not prevent a selector from being grouped.
+     */
+    private static final Set<String> GROUPABLE_PSEUDOS = new HashSet<String>(Arrays.asList("link", "visited",
+            "hover", "active", "focus", "first-child", "before", "after", "first-line", "first-letter", "lang"));
+
+    private static final Pattern PSEUDO = Pattern.compile(":+([-_a-zA-Z0-9]*)");
+
+    private static final Pattern IMPORTANT = Pattern.compile("!\\s*important$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Keywords and color names of CSS 2.1, which every browser understands.
+     */
+    private static final Set<String> CSS21_KEYWORDS = new HashSet<String>(Arrays.asList("inherit", "auto", "none",
+            "normal", "hidden", "visible", "scroll", "inline", "block", "list-item", "inline-block", "table",
+            "inline-table", "table-row-group", "table-header-group", "table-footer-group", "table-row",
+            "table-column-group", "table-column", "table-cell", "table-caption", "static", "relative", "absolute",
+            "fixed", "left", "right", "center", "top", "bottom", "middle", "baseline", "sub", "super", "text-top",
+            "text-bottom", "justify", "both", "bold", "bolder", "lighter", "italic", "oblique", "small-caps",
+            "underline", "overline", "line-through", "uppercase", "lowercase", "capitalize", "nowrap", "pre",
+            "pre-wrap", "pre-line", "solid", "dashed", "dotted", "double", "groove", "ridge", "inset", "outset",
+            "thin", "medium", "thick", "xx-small", "x-small", "small", "large", "x-large", "xx-large", "smaller",
+            "larger", "repeat", "repeat-x", "repeat-y", "no-repeat", "collapse", "separate", "show", "hide",
+            "default", "pointer", "crosshair", "move", "text", "wait", "help", "progress", "inside", "outside",
+            "disc", "circle", "square", "decimal", "ltr", "rtl", "transparent", "aqua", "black", "blue", "fuchsia",
+            "gray", "green", "lime", "maroon", "navy", "olive", "orange", "purple", "red", "silver", "teal",
+            "white", "yellow"));
+
+    private static final Pattern CSS21_LENGTH = Pattern
+            .compile("[-+]?([0-9]+|[0-9]*\\.[0-9]+)(px|em|ex|%|pt|pc|in|cm|mm)?");
+
+    private static final Pattern CSS21_COLOR = Pattern.compile("#([0-9a-f]{3}|[0-9a-f]{6})");
+
+    private static final Pattern VALUE_SEPARATOR = Pattern.compile("[\\s,/]+");
+
+    private final String css;
+
+    private final boolean optimize;
+
+    private int pos;
+
+    private CssOptimizer(String css, boolean optimize) {
+        this.css = css;
+        this.optimize = optimize;
+    }
+
+    /**
+     * Optimizes a stylesheet.
+     *
+     * @param css the stylesheet
+     * @param cssConfig the optimizations to apply
+     * @return the optimized stylesheet
+     * @throws ParseException when the stylesheet cannot be parsed, in which case it should be used as it is
+     */
+    public static String optimize(String css, CssConfig cssConfig) throws ParseException {
+        List<Node> nodes = new CssOptimizer(css, cssConfig.isOptimize()).parseRules(false);
+
+        if (cssConfig.getTokenIndex() != null) {
+            pruneRules(nodes, cssConfig.getTokenIndex());
+        }
+        if (cssConfig.isOptimize()) {
+            removeDuplicateRules(nodes);
+            nodes = mergeNodes(nodes);
+        }
+
+        StringBuilder out = new StringBuilder(css.length());
+        for (Node node : nodes) {
+            node.appendTo(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Removes the selectors referring to unused names, then the rules left without selectors and the conditional
+     * at-rules left empty.
+     */
+    private static void pruneRules(List<Node> nodes, TokenIndex tokenIndex) {
+        List<Node> remaining = new ArrayList<Node>(nodes.size());
+        for (Node node : nodes) {
+            if (node instanceof Rule) {
+                Rule rule = (Rule) node;
+                List<String> selectors = splitSelectors(rule.selector);
+                StringBuilder usedSelectors = new StringBuilder(rule.selector.length());
+                for (String selector : selectors) {
+                    if (isUsed(selector, tokenIndex)) {
+                        usedSelectors.append((usedSelectors.length() == 0) ? "" : ",").append(selector);
+                    }
+                }
+                if (usedSelectors.length() == 0) {
+                    continue;
+                }
+                rule.selector = usedSelectors.toString();
+            } else if (node instanceof Block) {
+                List<Node> children = ((Block) node).children;
+                pruneRules(children, tokenIndex);
+                if (children.isEmpty()) {
+                    continue;
+                }
+            }
+            remaining.add(node);
+        }
+        nodes.clear();
+        nodes.addAll(remaining);
+    }
+
+    /**
+     * Splits a group of selectors on the commas found outside strings, functions and attribute selectors.
+     */
+    private static List<String> splitSelectors(String selectorGroup) {
+        List<String> selectors = new ArrayList<String>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+
+        for (int i = 0; i < selectorGroup.length(); i++) {
+            char c = selectorGroup.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                selectors.add(selectorGroup.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        selectors.add(selectorGroup.substring(start).trim());
+
+        return selectors;
+    }
+
+    /**
+     * Whether every class and id of a selector, outside its functions and attribute selectors, is used. Selectors with
+     * escape sequences are always considered used, as their names cannot be matched as they are written.
+     */
+    private static boolean isUsed(String selector, TokenIndex tokenIndex) {
+        if (selector.indexOf('\\') != -1) {
+            return true;
+        }
+
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < selector.length(); i++) {
+            char c = selector.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if ((c == '.' || c == '#') && depth == 0) {
+                int end = i + 1;
+                while (end < selector.length() && TokenIndex.isNameChar(selector.charAt(end))) {
+                    end++;
+                }
+                if (end > i + 1 && !tokenIndex.contains(selector.substring(i + 1, end))) {
+                    return false;
+                }
+                i = end - 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the declarations overridden by a later declaration of the same rule and then the rules followed by an
+     * identical rule in the same context, along with the conditional at-rules left empty. Rules are indexed by their
+     * context, selector and declarations, so that each rule is only compared with its last identical one.
+     */
+    private static void removeDuplicateRules(List<Node> nodes) {
+        Map<String, Rule> lastRules = new HashMap<String, Rule>();
+        indexRules(nodes, "", lastRules);
+
+        Set<Rule> keptRules = Collections.newSetFromMap(new IdentityHashMap<Rule, Boolean>());
+        keptRules.addAll(lastRules.values());
+        removeRules(nodes, keptRules);
+    }
+
+    private static void indexRules(List<Node> nodes, String context, Map<String, Rule> lastRules) {
+        for (Node node : nodes) {
+            if (node instanceof Rule) {
+                Rule rule = (Rule) node;
+                lastRules.put(context + '\u0000' + rule.selector + '{' + rule.getBody(), rule);
+            } else if (node instanceof Block) {
+                Block block = (Block) node;
+                indexRules(block.children, context + '\u0000' + block.prelude, lastRules);
+            }
+        }
+    }
+
+    private static void removeRules(List<Node> nodes, Set<Rule> keptRules) {
+        List<Node> remaining = new ArrayList<Node>(nodes.size());
+        for (Node node : nodes) {
+            if (node instanceof Rule && !keptRules.contains(node)) {
+                continue;
+            }
+            if (node instanceof Block) {
+                List<Node> children = ((Block) node).children;
+                removeRules(children, keptRules);
+                if (children.isEmpty()) {
+                    continue;
+                }
+            }
+            remaining.add(node);
+        }
+        nodes.clear();
+        nodes.addAll(remaining);
+    }
+
+    private static List<Node> mergeNodes(List<Node> nodes) {
+        List<Node> merged = new ArrayList<Node>(nodes.size());
+        for (Node node : nodes) {
+            if (node instanceof Block) {
+                Block block = (Block) node;
+                block.children = mergeNodes(block.children);
+            }
+            appendNode(merged, node);
+        }
+        return merged;
+    }
+
+    /**
+     * Appends a node, merging it into the previous one when possible.
+     */
+    private static void appendNode(List<Node> nodes, Node node) {
+        Node previous = (nodes.isEmpty()) ? null : nodes.get(nodes.size() - 1);
+
+        if (node instanceof Rule && previous instanceof Rule) {
+            Rule rule = (Rule) node;
+            Rule previousRule = (Rule) previous;
+            if (previousRule.selector.equals(rule.selector)) {
+                // Overridden declarations are removed once the body is needed again
+                previousRule.declarations.addAll(rule.declarations);
+                previousRule.body = null;
+                return;
+            }
+            if (previousRule.getBody().equals(rule.getBody()) && isGroupable(previousRule.selector)
+                    && isGroupable(rule.selector)) {
+                previousRule.selector = previousRule.selector + ',' + rule.selector;
+                return;
+            }
+        } else if (node instanceof Block && previous instanceof Block
+                && ((Block) previous).prelude.equals(((Block) node).prelude)) {
+            for (Node child : ((Block) node).children) {
+                appendNode(((Block) previous).children, child);
+            }
+            return;
+        }
+
+        nodes.add(node);
+    }
+
+    /**
+     * Removes the declarations overridden by a later declaration of the same property in the same rule.
+     */
+    private static void removeOverriddenDeclarations(List<Declaration> declarations) {
+        Map<String, Declaration> laterDeclarations = new HashMap<String, Declaration>();
+        boolean[] overridden = new boolean[declarations.size()];
+        boolean removed = false;
+
+        for (int i = declarations.size() - 1; i >= 0; i--) {
+            Declaration declaration = declarations.get(i);
+            Declaration later = laterDeclarations.get(declaration.name);
+            if (later != null && later.important == declaration.important && (later.value.equals(declaration.value)
+                    || (isSupportedEverywhere(declaration.value) && isSupportedEverywhere(later.value)))) {
+                overridden[i] = true;
+                removed = true;
+            } else {
+                laterDeclarations.put(declaration.name, declaration);
+            }
+        }
+
+        if (removed) {
+            List<Declaration> remaining = new ArrayList<Declaration>(declarations.size());
+            for (int i = 0; i < declarations.size(); i++) {
+                if (!overridden[i]) {
+                    remaining.add(declarations.get(i));
+                }
+            }
+            declarations.clear();
+            declarations.addAll(remaining);
+        }
+    }
+
+    /**
+     * Whether a value is understood by every browser, i.e. only made of CSS 2.1 keywords, lengths and colors. An
+     * earlier value can only be removed when both values are, as neither is then a fallback for the other.
+     */
+    private static boolean isSupportedEverywhere(String value) {
+        for (String token : VALUE_SEPARATOR.split(value.toLowerCase(Locale.ENGLISH))) {
+            if (!token.isEmpty() && !CSS21_KEYWORDS.contains(token) && !CSS21_LENGTH.matcher(token).matches()
+                    && !CSS21_COLOR.matcher(token).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a selector can be grouped with others. A browser drops a whole group of selectors when it does not know
+     * one of them, so only selectors whose pseudo-classes are known to every browser are grouped.
+     */
+    private static boolean isGroupable(String selector) {
+        Matcher matcher = PSEUDO.matcher(selector);
+        while (matcher.find()) {
+            if (!GROUPABLE_PSEUDOS.contains(matcher.group(1).toLowerCase(Locale.ENGLISH))) {
+                return false;
+            }
+        }
+        return selector.indexOf('\\') == -1;
+    }
+
+    private List<Node> parseRules(boolean nested) throws ParseException {
+        List<Node> nodes = new ArrayList<Node>();
+        while (true) {
+            skipWhitespace();
+            if (pos == css.length()) {
+                if (nested) {
+                    throw error("'}'");
+                }
+                return nodes;
+            }
+
+            char c = css.charAt(pos);
+            if (c == '/' && css.startsWith("/*", pos)) {
+                String comment = readComment();
+                if (comment.startsWith("/*!")) {
+                    nodes.add(new Raw(comment));
+                }
+                continue;
+            }
+            if (c == '}') {
+                if (!nested) {
+                    throw error("a rule");
+                }
+                pos++;
+                return nodes;
+            }
+
+            String prelude = readUntil("{;}");
+            if (pos == css.length() || css.charAt(pos) == '}') {
+                throw error("'{' or ';'");
+            }
+            if (css.charAt(pos++) == ';') {
+                nodes.add(new Raw(prelude + ';'));
+            } else if (!prelude.startsWith("@")) {
+                nodes.add(new Rule(prelude, parseDeclarations(), optimize));
+            } else if (CONDITIONAL_AT_RULES.contains(getAtKeyword(prelude))) {
+                nodes.add(new Block(prelude, parseRules(true)));
+            } else {
+                nodes.add(new Raw(prelude + '{' + readRawBlock() + '}'));
+            }
+        }
+    }
+
+    private List<Declaration> parseDeclarations() throws ParseException {
+        List<Declaration> declarations = new ArrayList<Declaration>();
+        while (true) {
+            String text = readUntil("{;}");
+            if (pos == css.length() || css.charAt(pos) == '{') {
+                throw error("';' or '}'");
+            }
+            if (!text.isEmpty()) {
+                int colon = text.indexOf(':');
+                if (colon <= 0) {
+                    throw error("a declaration");
+                }
+                declarations.add(new Declaration(text.substring(0, colon).trim(), text.substring(colon + 1).trim()));
+            }
+            if (css.charAt(pos++) == '}') {
+                return declarations;
+            }
+        }
+    }
+
+    /**
+     * Reads up to one of the given characters outside of any parentheses, brackets, string or comment. Comments are
+     * removed and whitespace is collapsed, the arguments of {@code url(} functions are kept as they are.
+     */
+    private String readUntil(String stops) throws ParseException {
+        StringBuilder text = new StringBuilder();
+        int depth = 0;
+        boolean space = false;
+
+        while (pos < css.length()) {
+            char c = css.charAt(pos);
+            if (depth == 0 && stops.indexOf(c) != -1) {
+                break;
+            }
+            if (c == '/' && css.startsWith("/*", pos)) {
+                readComment();
+                continue;
+            }
+            if (isWhitespace(c)) {
+                space = true;
+                pos++;
+                continue;
+            }
+
+            if (space && text.length() > 0) {
+                text.append(' ');
+            }
+            space = false;
+            if (c == '"' || c == '\'') {
+                text.append(readString());
+            } else if (c == '(' && text.length() >= 3
+                    && text.substring(text.length() - 3).equalsIgnoreCase("url")) {
+                text.append(readUrl());
+            } else {
+                if (c == '(' || c == '[') {
+                    depth++;
+                } else if ((c == ')' || c == ']') && depth > 0) {
+                    depth--;
+                } else if (c == '\\' && pos + 1 < css.length()) {
+                    text.append(c);
+                    c = css.charAt(++pos);
+                }
+                text.append(c);
+                pos++;
+            }
+        }
+
+        return text.toString();
+    }
+
+    private String readString() throws ParseException {
+        int start = pos;
+        char quote = css.charAt(pos++);
+        while (pos < css.length()) {
+            char c = css.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == quote) {
+                return css.substring(start, pos);
+            } else if (c == '\n' || c == '\r' || c == '\f') {
+                break;
+            }
+        }
+        pos = start;
+        throw error("a closing quote");
+    }
+
+    private String readUrl() throws ParseException {
+        int start = pos++;
+        while (pos < css.length()) {
+            char c = css.charAt(pos);
+            if (c == '"' || c == '\'') {
+                readString();
+            } else if (c == '\\') {
+                pos += 2;
+            } else {
+                pos++;
+                if (c == ')') {
+                    return css.substring(start, pos);
+                }
+            }
+        }
+        pos = start;
+        throw error("')'");
+    }
+
+    private String readComment() throws ParseException {
+        int end = css.indexOf("*/", pos + 2);
+        if (end == -1) {
+            throw error("the end of the comment");
+        }
+        String comment = css.substring(pos, end + 2);
+        pos = end + 2;
+        return comment;
+    }
+
+    /**
+     * Reads the block of an at-rule which is not optimized, up to its closing brace.
+     */
+    private String readRawBlock() throws ParseException {
+        int start = pos;
+        int depth = 0;
+        while (pos < css.length()) {
+            char c = css.charAt(pos);
+            if (c == '"' || c == '\'') {
+                readString();
+            } else if (c == '/' && css.startsWith("/*", pos)) {
+                readComment();
+            } else if (c == '\\') {
+                pos += 2;
+            } else {
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}' && depth-- == 0) {
+                    return css.substring(start, pos++);
+                }
+                pos++;
+            }
+        }
+        throw error("'}'");
+    }
+
+    private void skipWhitespace() {
+        while (pos < css.length() && isWhitespace(css.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private ParseException error(String expected) {
+        return new ParseException("Expected " + expected + " at offset " + pos + ".", pos);
+    }
+
+    private static String getAtKeyword(String atRule) {
+        int end = 1;
+        while (end < atRule.length() && (Character.isLetterOrDigit(atRule.charAt(end)) || atRule.charAt(end) == '-')) {
+            end++;
+        }
+        return atRule.substring(1, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Node of the rule tree.
+     */
+    private abstract static class Node {
+
+        abstract void appendTo(StringBuilder out);
+    }
+
+    /**
+     * Statement kept as it is, e.g. an {@code @import} rule or a {@code @font-face} rule.
+     */
+    private static class Raw extends Node {
+
+        private final String text;
+
+        Raw(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            out.append(text);
+        }
+    }
+
+    /**
+     * Conditional at-rule holding rules.
+     */
+    private static class Block extends Node {
+
+        private final String prelude;
+
+        private List<Node> children;
+
+        Block(String prelude, List<Node> children) {
+            this.prelude = prelude;
+            this.children = children;
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            out.append(prelude).append('{');
+            for (Node child : children) {
+                child.appendTo(out);
+            }
+            out.append('}');
+        }
+    }
+
+    /**
+     * Style rule.
+     */
+    private static class Rule extends Node {
+
+        private String selector;
+
+        private final List<Declaration> declarations;
+
+        private final boolean optimize;
+
+        private String body;
+
+        Rule(String selector, List<Declaration> declarations, boolean optimize) {
+            this.selector = selector;
+            this.declarations = declarations;
+            this.optimize = optimize;
+        }
+
+        String getBody() {
+            if (body == null) {
+                if (optimize) {
+                    removeOverriddenDeclarations(declarations);
+                }
+                StringBuilder out = new StringBuilder();
+                for (int i = 0; i < declarations.size(); i++) {
+                    declarations.get(i).appendTo(out.append((i == 0) ? "" : ";"));
+                }
+                body = out.toString();
+            }
+            return body;
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            out.append(selector).append('{').append(getBody()).append('}');
+        }
+    }
+
+    /**
+     * Declaration of a style rule.
+     */
+    private static class Declaration {
+
+        private final String property;
+
+        /** Property name in lower case, under which declarations override each other */
+        private final String name;
+
+        private final String value;
+
+        private final boolean important;
+
+        Declaration(String property, String value) {
+            Matcher matcher = IMPORTANT.matcher(value);
+            this.property = property;
+            this.name = property.toLowerCase(Locale.ENGLISH);
+            this.important = matcher.find();
+            this.value = (important) ? value.substring(0, matcher.start()).trim() : value;
+        }
+
+        void appendTo(StringBuilder out) {
+            out.append(property).append(':').append(value).append((important) ? "!important" : "");
+        }
+    }
+}
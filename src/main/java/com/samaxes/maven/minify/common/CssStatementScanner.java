@@ -0,0 +1,204 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Records where every CSS statement and declaration starts. The CSS compressor keeps statements and declarations in
+ * order, so the positions found in the source files and in the minified file can be paired to build a source map.
+ * Comments and strings are skipped, as well as the empty rules of the source files, as the compressor removes them.
+ */
+public class CssStatementScanner {
+
+    private int[] positions = new int[3 * 256];
+
+    private int size;
+
+    /**
+     * Scans a CSS file and records the position of its statements and declarations.
+     *
+     * @param in the CSS file contents
+     * @param source index of the file, recorded with each position
+     * @param skipEmptyRules whether to skip the rules without declarations or not
+     * @throws IOException if an I/O error occurs
+     */
+    public void scan(Reader in, int source, boolean skipEmptyRules) throws IOException {
+        PushbackReader reader = new PushbackReader(in);
+        int line = 0;
+        int column = 0;
+        boolean expectingStart = true;
+        // Number of positions recorded before the last opening brace, -1 if a statement started since then
+        int sizeAtBrace = -1;
+
+        int c;
+        while ((c = reader.read()) != -1) {
+            int startLine = line;
+            int startColumn = column;
+
+            if (c == '\r' || c == '\n') {
+                if (c == '\r') {
+                    int next = reader.read();
+                    if (next != '\n' && next != -1) {
+                        reader.unread(next);
+                    }
+                }
+                line++;
+                column = 0;
+                continue;
+            }
+            column++;
+
+            if (c == '/') {
+                int next = reader.read();
+                if (next == '*') {
+                    column++;
+                    // Skip the comment
+                    int previous = 0;
+                    while ((c = reader.read()) != -1 && !(previous == '*' && c == '/')) {
+                        if (c == '\n' || (c == '\r' && !isNext(reader, '\n'))) {
+                            line++;
+                            column = 0;
+                        } else if (c != '\r') {
+                            column++;
+                        }
+                        previous = c;
+                    }
+                    column++;
+                    continue;
+                } else if (next != -1) {
+                    reader.unread(next);
+                }
+            }
+
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+
+            switch (c) {
+                case '{':
+                    sizeAtBrace = size;
+                    expectingStart = true;
+                    break;
+                case '}':
+                    if (skipEmptyRules && sizeAtBrace == size && size > 0) {
+                        // Empty rule, removed by the compressor along with its selector
+                        size--;
+                    }
+                    sizeAtBrace = -1;
+                    expectingStart = true;
+                    break;
+                case ';':
+                    expectingStart = true;
+                    break;
+                default:
+                    if (expectingStart) {
+                        add(source, startLine, startColumn);
+                        expectingStart = false;
+                        sizeAtBrace = -1;
+                    }
+                    if (c == '"' || c == '\'') {
+                        column += skipString(reader, c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of recorded positions.
+     *
+     * @return the number of recorded positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the file index of a position.
+     *
+     * @param index the position index
+     * @return the file index
+     */
+    public int getSource(int index) {
+        return positions[3 * index];
+    }
+
+    /**
+     * Gets the zero-based line of a position.
+     *
+     * @param index the position index
+     * @return the line
+     */
+    public int getLine(int index) {
+        return positions[3 * index + 1];
+    }
+
+    /**
+     * Gets the zero-based column of a position.
+     *
+     * @param index the position index
+     * @return the column
+     */
+    public int getColumn(int index) {
+        return positions[3 * index + 2];
+    }
+
+    private void add(int source, int line, int column) {
+        if (3 * size == positions.length) {
+            positions = Arrays.copyOf(positions, 2 * positions.length);
+        }
+        positions[3 * size] = source;
+        positions[3 * size + 1] = line;
+        positions[3 * size + 2] = column;
+        size++;
+    }
+
+    private static boolean isNext(PushbackReader reader, int expected) throws IOException {
+        int next = reader.read();
+        if (next != -1) {
+            reader.unread(next);
+        }
+        return next == expected;
+    }
+
+    private static int skipString(PushbackReader reader, int quote) throws IOException {
+        int length = 0;
+        int c;
+        while ((c = reader.read()) != -1) {
+            length++;
+            if (c == '\\') {
+                if (reader.read() != -1) {
+                    length++;
+                }
+            } else if (c == '\n') {
+                // Unterminated string, the line break is handled by the caller
+                reader.unread(c);
+                length--;
+                break;
+            } else if (c == quote) {
+                break;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that rewrites the {@code url()} references of a stylesheet as it is read, so that a source file can be
+ * rewritten while it is merged, without a second pass over it. References inside comments and strings are left
+ * untouched, and so are the malformed ones. The other characters are read as they are.
+ */
+public class CssUrlReader extends FilterReader {
+
+    /**
+     * Rewrites the URL of a {@code url()} reference.
+     */
+    public interface Rewriter {
+
+        /**
+         * Rewrites a URL.
+         *
+         * @param url the URL, without its quotes and surrounding whitespace
+         * @return the URL to write, or the given URL to keep the reference as it is
+         * @throws IOException when the resource referenced by the URL cannot be read
+         */
+        String rewrite(String url) throws IOException;
+    }
+
+    private static final String URL_FUNCTION = "url(";
+
+    private final Rewriter rewriter;
+
+    private final char[] buffer = new char[8192];
+
+    private int position;
+
+    private int limit;
+
+    private final StringBuilder output = new StringBuilder();
+
+    private int outputPosition;
+
+    private boolean comment;
+
+    private char quote;
+
+    private char previous;
+
+    /**
+     * CSS URL reader constructor.
+     *
+     * @param in the stylesheet to read
+     * @param rewriter the rewriter of the URLs
+     */
+    public CssUrlReader(Reader in, Rewriter rewriter) {
+        super(in);
+        this.rewriter = rewriter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] c = new char[1];
+        return (read(c, 0, 1) == -1) ? -1 : c[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (outputPosition == output.length()) {
+            output.setLength(0);
+            outputPosition = 0;
+            if (!fill()) {
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, output.length() - outputPosition);
+        output.getChars(outputPosition, outputPosition + n, cbuf, off);
+        outputPosition += n;
+        return n;
+    }
+
+    /**
+     * Skipped characters are still rewritten, so that the state of the reader follows the stylesheet.
+     *
+     * @param n the number of characters to skip
+     * @return the number of characters actually skipped
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        char[] skipped = new char[(int) Math.min(n, buffer.length)];
+        long count = 0;
+        while (count < n) {
+            int read = read(skipped, 0, (int) Math.min(skipped.length, n - count));
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return outputPosition < output.length() || position < limit || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Rewrites the next characters to the output.
+     *
+     * @return {@code false} if the end of the stylesheet was reached without writing anything
+     */
+    private boolean fill() throws IOException {
+        while (output.length() < buffer.length) {
+            int c = peek(0);
+            if (c == -1) {
+                break;
+            }
+
+            if (comment) {
+                if (c == '*' && peek(1) == '/') {
+                    comment = false;
+                    copy(2);
+                } else {
+                    copy(1);
+                }
+            } else if (quote != 0) {
+                if (c == '\\' && peek(1) != -1) {
+                    copy(2);
+                } else {
+                    quote = (c == quote) ? 0 : quote;
+                    copy(1);
+                }
+            } else if (c == '/' && peek(1) == '*') {
+                comment = true;
+                copy(2);
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+                copy(1);
+            } else if ((c == 'u' || c == 'U') && !TokenIndex.isNameChar(previous) && isUrlFunction()) {
+                readUrl();
+            } else {
+                copy(1);
+            }
+        }
+
+        return output.length() > 0;
+    }
+
+    /**
+     * Reads a {@code url()} reference, from its function name to its closing parenthesis, and writes it rewritten.
+     */
+    private void readUrl() throws IOException {
+        StringBuilder reference = new StringBuilder();
+        take(reference, URL_FUNCTION.length());
+        skipWhitespace(reference);
+
+        char urlQuote = 0;
+        StringBuilder url = new StringBuilder();
+        int c = peek(0);
+        if (c == '"' || c == '\'') {
+            urlQuote = (char) c;
+            take(reference, 1);
+            while ((c = peek(0)) != -1 && c != urlQuote && c != '\n') {
+                if (c == '\\' && peek(1) != -1) {
+                    url.append(take(reference, 1)).append(take(reference, 1));
+                } else {
+                    url.append(take(reference, 1));
+                }
+            }
+            if (c != urlQuote) {
+                writeUnchanged(reference);
+                return;
+            }
+            take(reference, 1);
+            skipWhitespace(reference);
+        } else {
+            while ((c = peek(0)) != -1 && c != ')' && c != '"' && c != '\'' && c != '(') {
+                if (c == '\\' && peek(1) != -1) {
+                    url.append(take(reference, 1)).append(take(reference, 1));
+                } else {
+                    url.append(take(reference, 1));
+                }
+            }
+        }
+        if (peek(0) != ')') {
+            writeUnchanged(reference);
+            return;
+        }
+        take(reference, 1);
+
+        String originalUrl = url.toString().trim();
+        String rewrittenUrl = rewriter.rewrite(originalUrl);
+        if (rewrittenUrl.equals(originalUrl) || (urlQuote != 0 && rewrittenUrl.indexOf(urlQuote) != -1)) {
+            writeUnchanged(reference);
+            return;
+        }
+        if (urlQuote == 0 && needsQuotes(rewrittenUrl)) {
+            urlQuote = (rewrittenUrl.indexOf('"') == -1) ? '"' : '\'';
+        }
+
+        output.append(reference, 0, URL_FUNCTION.length());
+        if (urlQuote != 0) {
+            output.append(urlQuote).append(rewrittenUrl).append(urlQuote);
+        } else {
+            output.append(rewrittenUrl);
+        }
+        output.append(')');
+        previous = ')';
+    }
+
+    private boolean isUrlFunction() throws IOException {
+        for (int i = 0; i < URL_FUNCTION.length(); i++) {
+            int c = peek(i);
+            if (c == -1 || Character.toLowerCase((char) c) != URL_FUNCTION.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean needsQuotes(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c <= ' ' || c == '(' || c == ')' || c == '"' || c == '\'') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeUnchanged(StringBuilder reference) {
+        output.append(reference);
+        previous = reference.charAt(reference.length() - 1);
+    }
+
+    private void skipWhitespace(StringBuilder reference) throws IOException {
+        int c;
+        while ((c = peek(0)) == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+            take(reference, 1);
+        }
+    }
+
+    /**
+     * Moves characters from the input to a reference being read.
+     *
+     * @return the last character moved
+     */
+    private char take(StringBuilder reference, int count) {
+        char c = 0;
+        for (int i = 0; i < count; i++) {
+            c = buffer[position++];
+            reference.append(c);
+        }
+        return c;
+    }
+
+    /**
+     * Moves characters from the input to the output.
+     */
+    private void copy(int count) {
+        output.append(buffer, position, count);
+        position += count;
+        previous = buffer[position - 1];
+    }
+
+    /**
+     * Returns a character ahead of the current position, reading more of the input when needed.
+     *
+     * @param offset the offset from the current position, smaller than the buffer size
+     * @return the character, or {@code -1} past the end of the input
+     */
+    private int peek(int offset) throws IOException {
+        while (position + offset >= limit) {
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n == -1) {
+                return -1;
+            }
+            limit += n;
+        }
+        return buffer[position + offset];
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+/**
+ * Data URIs of the assets inlined in the stylesheets. An asset referenced by several stylesheets is only read once per
+ * build, as long as its size and modification time do not change. Encodings are shared by a digest of the asset
+ * contents, so that an asset copied under several paths is only encoded once.
+ */
+public class DataUriCache {
+
+    private static final Map<String, String> MEDIA_TYPES = new HashMap<String, String>();
+
+    static {
+        MEDIA_TYPES.put("gif", "image/gif");
+        MEDIA_TYPES.put("png", "image/png");
+        MEDIA_TYPES.put("jpg", "image/jpeg");
+        MEDIA_TYPES.put("jpeg", "image/jpeg");
+        MEDIA_TYPES.put("webp", "image/webp");
+        MEDIA_TYPES.put("svg", "image/svg+xml");
+        MEDIA_TYPES.put("ico", "image/x-icon");
+        MEDIA_TYPES.put("cur", "image/x-icon");
+        MEDIA_TYPES.put("woff", "application/font-woff");
+        MEDIA_TYPES.put("woff2", "font/woff2");
+        MEDIA_TYPES.put("ttf", "application/x-font-ttf");
+        MEDIA_TYPES.put("otf", "application/x-font-opentype");
+        MEDIA_TYPES.put("eot", "application/vnd.ms-fontobject");
+    }
+
+    private final ConcurrentMap<String, String> dataUrisByFile = new ConcurrentHashMap<String, String>();
+
+    private final ConcurrentMap<String, String> dataUris = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Returns the media type of an asset, from its extension.
+     *
+     * @param asset the asset
+     * @return the media type, or {@code null} if the asset is not an image or a font of a known type
+     */
+    public static String getMediaType(File asset) {
+        String name = asset.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot == -1) ? null : MEDIA_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Returns the base64 data URI of an asset.
+     *
+     * @param asset the asset, whose media type must be known
+     * @return the data URI
+     * @throws IOException when the asset cannot be read
+     */
+    public String get(File asset) throws IOException {
+        File file = asset.getCanonicalFile();
+        String mediaType = getMediaType(asset);
+        String fileKey = mediaType + ':' + file.getPath() + '\0' + file.length() + '\0' + file.lastModified();
+        String dataUri = dataUrisByFile.get(fileKey);
+        if (dataUri == null) {
+            dataUri = encode(file, mediaType);
+            dataUrisByFile.putIfAbsent(fileKey, dataUri);
+        }
+        return dataUri;
+    }
+
+    private String encode(File asset, String mediaType) throws IOException {
+        byte[] contents = Files.toByteArray(asset);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 digest is not available.", e);
+        }
+        String key = mediaType + ':' + BaseEncoding.base16().encode(digest.digest(contents));
+
+        String dataUri = dataUris.get(key);
+        if (dataUri == null) {
+            dataUri = "data:" + mediaType + ";base64," + BaseEncoding.base64().encode(contents);
+            String previous = dataUris.putIfAbsent(key, dataUri);
+            if (previous != null) {
+                dataUri = previous;
+            }
+        }
+        return dataUri;
+    }
+
+    /**
+     * Gets the number of assets encoded so far.
+     *
+     * @return the number of distinct assets encoded
+     */
+    public int size() {
+        return dataUris.size();
+    }
+}
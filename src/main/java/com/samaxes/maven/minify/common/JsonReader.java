@@ -0,0 +1,233 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader, used for the files written by the plugin in previous builds. Objects are read as {@code Map},
+ * arrays as {@code List}, integral numbers as {@code Long}, other numbers as {@code Double}, and strings, booleans and
+ * {@code null} as themselves.
+ */
+public class JsonReader {
+
+    private final Reader reader;
+
+    private int next;
+
+    private JsonReader(Reader reader) throws IOException {
+        this.reader = reader;
+        this.next = reader.read();
+    }
+
+    /**
+     * Reads a JSON text.
+     *
+     * @param reader the reader from which the JSON text is read
+     * @return the JSON value
+     * @throws IOException if an I/O error occurs or the text is not valid JSON
+     */
+    public static Object read(Reader reader) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+
+        Object value = jsonReader.readValue();
+        jsonReader.skipWhitespace();
+        if (jsonReader.next != -1) {
+            throw jsonReader.syntaxError("end of text");
+        }
+        return value;
+    }
+
+    private Object readValue() throws IOException {
+        skipWhitespace();
+        switch (next) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                readKeyword("true");
+                return Boolean.TRUE;
+            case 'f':
+                readKeyword("false");
+                return Boolean.FALSE;
+            case 'n':
+                readKeyword("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+
+        consume('{');
+        skipWhitespace();
+        if (next == '}') {
+            consume('}');
+            return object;
+        }
+        do {
+            skipWhitespace();
+            String name = readString();
+            skipWhitespace();
+            consume(':');
+            object.put(name, readValue());
+            skipWhitespace();
+        } while (consumeIf(','));
+        consume('}');
+
+        return object;
+    }
+
+    private List<Object> readArray() throws IOException {
+        List<Object> array = new ArrayList<Object>();
+
+        consume('[');
+        skipWhitespace();
+        if (next == ']') {
+            consume(']');
+            return array;
+        }
+        do {
+            array.add(readValue());
+            skipWhitespace();
+        } while (consumeIf(','));
+        consume(']');
+
+        return array;
+    }
+
+    private String readString() throws IOException {
+        StringBuilder string = new StringBuilder();
+
+        consume('"');
+        while (next != '"') {
+            if (next == -1 || next < 0x20) {
+                throw syntaxError("closing quote");
+            }
+            if (next == '\\') {
+                advance();
+                switch (next) {
+                    case 'b':
+                        string.append('\b');
+                        break;
+                    case 'f':
+                        string.append('\f');
+                        break;
+                    case 'n':
+                        string.append('\n');
+                        break;
+                    case 'r':
+                        string.append('\r');
+                        break;
+                    case 't':
+                        string.append('\t');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            advance();
+                            hex[i] = (char) next;
+                        }
+                        try {
+                            string.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw syntaxError("unicode escape");
+                        }
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        string.append((char) next);
+                        break;
+                    default:
+                        throw syntaxError("escape sequence");
+                }
+            } else {
+                string.append((char) next);
+            }
+            advance();
+        }
+        consume('"');
+
+        return string.toString();
+    }
+
+    private Number readNumber() throws IOException {
+        StringBuilder number = new StringBuilder();
+        boolean integral = true;
+
+        while ((next >= '0' && next <= '9') || next == '-' || next == '+' || next == '.' || next == 'e'
+                || next == 'E') {
+            integral &= next != '.' && next != 'e' && next != 'E';
+            number.append((char) next);
+            advance();
+        }
+
+        try {
+            return (integral) ? (Number) Long.valueOf(number.toString()) : (Number) Double.valueOf(number.toString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("value");
+        }
+    }
+
+    private void readKeyword(String keyword) throws IOException {
+        for (int i = 0; i < keyword.length(); i++) {
+            consume(keyword.charAt(i));
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+            advance();
+        }
+    }
+
+    private boolean consumeIf(char c) throws IOException {
+        if (next == c) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void consume(char c) throws IOException {
+        if (!consumeIf(c)) {
+            throw syntaxError("'" + c + "'");
+        }
+    }
+
+    private void advance() throws IOException {
+        next = reader.read();
+    }
+
+    private IOException syntaxError(String expected) {
+        return new IOException("Invalid JSON: expected " + expected + " but found "
+                + ((next == -1) ? "end of text" : "'" + (char) next + "'") + ".");
+    }
+}
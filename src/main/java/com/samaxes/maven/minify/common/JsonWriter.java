@@ -0,0 +1,240 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Minimal streaming JSON writer, used for the files written by the plugin next to its output files.
+ */
+public class JsonWriter implements Closeable {
+
+    private final Writer writer;
+
+    private final String indent;
+
+    /** Whether the next element of each open object or array is its first one. */
+    private final Deque<Boolean> firstElements = new ArrayDeque<Boolean>();
+
+    private boolean afterName;
+
+    /**
+     * JSON writer constructor.
+     *
+     * @param writer the writer to which the JSON text is written
+     * @param indent the string used to indent nested elements, or {@code null} to write compact JSON
+     */
+    public JsonWriter(Writer writer, String indent) {
+        this.writer = writer;
+        this.indent = indent;
+    }
+
+    /**
+     * Quotes and escapes a string value.
+     *
+     * @param value the string value
+     * @return the JSON string
+     */
+    public static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2);
+
+        quoted.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        quoted.append('"');
+
+        return quoted.toString();
+    }
+
+    /**
+     * Begins an object.
+     *
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter beginObject() throws IOException {
+        return begin('{');
+    }
+
+    /**
+     * Ends the current object.
+     *
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter endObject() throws IOException {
+        return end('}');
+    }
+
+    /**
+     * Begins an array.
+     *
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter beginArray() throws IOException {
+        return begin('[');
+    }
+
+    /**
+     * Ends the current array.
+     *
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter endArray() throws IOException {
+        return end(']');
+    }
+
+    /**
+     * Writes the name of the next object member.
+     *
+     * @param name the member name
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter name(String name) throws IOException {
+        beforeElement();
+        writer.write(quote(name));
+        writer.write((indent == null) ? ":" : ": ");
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value.
+     *
+     * @param value the value, possibly {@code null}
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter value(String value) throws IOException {
+        beforeValue();
+        writer.write((value == null) ? "null" : quote(value));
+        return this;
+    }
+
+    /**
+     * Writes a number value.
+     *
+     * @param value the value
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writer.write(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Writes a number value.
+     *
+     * @param value the value, must be finite
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON numbers must be finite: " + value);
+        }
+        beforeValue();
+        writer.write(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Writes a boolean value.
+     *
+     * @param value the value
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writer.write(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Ends the JSON text and closes the underlying writer.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try (Writer out = writer) {
+            if (indent != null) {
+                out.write('\n');
+            }
+        }
+    }
+
+    private JsonWriter begin(char bracket) throws IOException {
+        beforeValue();
+        writer.write(bracket);
+        firstElements.push(true);
+        return this;
+    }
+
+    private JsonWriter end(char bracket) throws IOException {
+        if (!firstElements.pop()) {
+            newLine();
+        }
+        writer.write(bracket);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (!firstElements.isEmpty()) {
+            beforeElement();
+        }
+    }
+
+    private void beforeElement() throws IOException {
+        if (!firstElements.pop()) {
+            writer.write(',');
+        }
+        firstElements.push(false);
+        newLine();
+    }
+
+    private void newLine() throws IOException {
+        if (indent != null) {
+            writer.write('\n');
+            for (int i = 0; i < firstElements.size(); i++) {
+                writer.write(indent);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Separator added between the merged source files that do not end with a terminator. Only the last bytes of each file
+ * are read to find it out, so the source files must use an ASCII compatible character set.
+ */
+public enum Separator {
+    /** Source files are concatenated as they are. */
+    NONE,
+    /** A line break is added after the source files that do not end with one. */
+    NEWLINE,
+    /**
+     * A line break is added after the source files that do not end with one, followed by a semicolon and another line
+     * break when their last statement is not terminated by a semicolon. Only valid for JavaScript files, as CSS parsers
+     * would read the semicolon as part of the next rule selector.
+     */
+    SEMICOLON;
+
+    private static final byte[] NO_TERMINATOR = new byte[0];
+
+    private static final byte[] LINE_TERMINATOR = { '\n' };
+
+    private static final byte[] STATEMENT_TERMINATOR = { ';', '\n' };
+
+    private static final byte[] LINE_AND_STATEMENT_TERMINATOR = { '\n', ';', '\n' };
+
+    /**
+     * Number of bytes read at the end of each source file.
+     */
+    private static final int TAIL_SIZE = 64;
+
+    /**
+     * Returns the bytes to add after a source file, reading no more than its last {@value #TAIL_SIZE} bytes.
+     *
+     * @param file the source file
+     * @return the bytes to add after the file, possibly none, which must not be modified
+     * @throws IOException when the source file cannot be read
+     */
+    public byte[] getTerminator(File file) throws IOException {
+        if (this == NONE) {
+            return NO_TERMINATOR;
+        }
+
+        byte[] tail;
+        long length;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            length = in.length();
+            tail = new byte[(int) Math.min(length, TAIL_SIZE)];
+            in.seek(length - tail.length);
+            in.readFully(tail);
+        }
+
+        if (tail.length == 0) {
+            return NO_TERMINATOR;
+        }
+        boolean lineTerminated = tail[tail.length - 1] == '\n';
+        if (this == NEWLINE) {
+            return (lineTerminated) ? NO_TERMINATOR : LINE_TERMINATOR;
+        }
+
+        int last = tail.length - 1;
+        while (last >= 0 && isWhitespace(tail[last])) {
+            last--;
+        }
+        // Files holding nothing but whitespace need no terminator, but longer whitespace tails are not looked past
+        boolean statementTerminated = (last >= 0) ? tail[last] == ';' : length == tail.length;
+        if (statementTerminated) {
+            return (lineTerminated) ? NO_TERMINATOR : LINE_TERMINATOR;
+        }
+        return (lineTerminated) ? STATEMENT_TERMINATOR : LINE_AND_STATEMENT_TERMINATOR;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+}
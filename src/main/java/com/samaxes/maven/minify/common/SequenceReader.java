@@ -0,0 +1,75 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Enumeration;
+
+/**
+ * Character counterpart of {@code SequenceInputStream}: reads the readers produced by an enumeration one after the
+ * other. Each reader is closed once it has been read, and only the current one is closed when the sequence is closed
+ * early, so the enumeration should open its readers lazily.
+ */
+public class SequenceReader extends Reader {
+
+    private final Enumeration<? extends Reader> readers;
+
+    private Reader current;
+
+    /**
+     * Sequence reader constructor.
+     *
+     * @param readers the readers to read, in order
+     */
+    public SequenceReader(Enumeration<? extends Reader> readers) {
+        this.readers = readers;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (current == null) {
+                if (!readers.hasMoreElements()) {
+                    return -1;
+                }
+                current = readers.nextElement();
+            }
+
+            int n = current.read(cbuf, off, len);
+            if (n != -1) {
+                return n;
+            }
+            current.close();
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+}
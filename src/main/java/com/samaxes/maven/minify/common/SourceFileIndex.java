@@ -0,0 +1,178 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.util.AbstractScanner;
+import org.codehaus.plexus.util.MatchPatterns;
+
+/**
+ * In-memory index of the files found under the source directories of an execution. Each directory is walked at most
+ * once, capturing the path and attributes of every file in a single pass, and every bundle include and exclude patterns
+ * are then matched from memory. Patterns follow the plexus {@code DirectoryScanner} syntax, including its default
+ * exclusions.
+ * <p>
+ * The index is a snapshot: files created or deleted after a directory was walked are not seen.
+ * </p>
+ */
+public class SourceFileIndex {
+
+    private static final String REGEX_PATTERN_PREFIX = "%regex[";
+
+    private static final MatchPatterns DEFAULT_EXCLUDES = MatchPatterns.from(normalizePatterns(Arrays
+            .asList(AbstractScanner.DEFAULTEXCLUDES)));
+
+    /**
+     * Attributes of the indexed files, keyed by their absolute path.
+     */
+    private final NavigableMap<String, BasicFileAttributes> files = new TreeMap<String, BasicFileAttributes>();
+
+    /**
+     * Absolute paths of the walked directories.
+     */
+    private final List<String> walkedDirs = new ArrayList<String>();
+
+    /**
+     * Whether a source file exists. Indexed files are looked up in memory, other files are checked on the file
+     * system.
+     *
+     * @param file the file
+     * @return {@code true} if the file exists and is a regular file
+     */
+    public synchronized boolean isFile(File file) {
+        // Files missing from the index are still checked, as they may have been named with a different case on a
+        // case-insensitive file system
+        return files.containsKey(getPath(file)) || file.isFile();
+    }
+
+    /**
+     * Returns the size of a source file. The size of indexed files is the one read when their directory was walked.
+     *
+     * @param file the file
+     * @return the file size, in bytes
+     */
+    public synchronized long getSize(File file) {
+        BasicFileAttributes attributes = files.get(getPath(file));
+        return (attributes != null) ? attributes.size() : file.length();
+    }
+
+    /**
+     * Returns the files of a directory matching the given patterns, relative to that directory. The directory is walked
+     * on the first call, unless it lies in an already walked directory.
+     *
+     * @param baseDir the directory where the patterns are matched
+     * @param includes the patterns of the files to include
+     * @param excludes the patterns of the files to exclude, along with the default exclusions
+     * @return the matching files, in no particular order
+     * @throws IOException when the directory cannot be walked
+     */
+    public synchronized List<File> getIncludedFiles(File baseDir, List<String> includes, List<String> excludes)
+            throws IOException {
+        String prefix = getPath(baseDir);
+        if (!isWalked(prefix)) {
+            walk(baseDir.toPath().toAbsolutePath().normalize());
+        }
+        if (!prefix.endsWith(File.separator)) {
+            prefix += File.separator;
+        }
+
+        MatchPatterns includePatterns = MatchPatterns.from(normalizePatterns(includes));
+        MatchPatterns excludePatterns = MatchPatterns.from(normalizePatterns(excludes));
+        List<File> includedFiles = new ArrayList<File>();
+
+        for (String path : files.subMap(prefix, true, prefix + Character.MAX_VALUE, true).keySet()) {
+            String name = path.substring(prefix.length());
+            if (includePatterns.matches(name, true) && !excludePatterns.matches(name, true)
+                    && !DEFAULT_EXCLUDES.matches(name, true)) {
+                includedFiles.add(new File(baseDir, name));
+            }
+        }
+
+        return includedFiles;
+    }
+
+    private void walk(Path dir) throws IOException {
+        Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            files.put(file.toString(), attrs);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        // Unreadable files and directories are skipped, as the directory scanner does
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+
+        walkedDirs.add(dir.toString());
+    }
+
+    private boolean isWalked(String path) {
+        for (String walkedDir : walkedDirs) {
+            if (path.equals(walkedDir) || path.startsWith(walkedDir + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getPath(File file) {
+        return file.toPath().toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Normalizes the patterns the way the directory scanner does: file separators are made platform specific and
+     * patterns ending with a separator match everything under that directory.
+     */
+    private static List<String> normalizePatterns(List<String> patterns) {
+        List<String> normalizedPatterns = new ArrayList<String>(patterns.size());
+
+        for (String pattern : patterns) {
+            pattern = pattern.trim();
+            if (!pattern.startsWith(REGEX_PATTERN_PREFIX)) {
+                pattern = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+                if (pattern.endsWith(File.separator)) {
+                    pattern += "**";
+                }
+            }
+            normalizedPatterns.add(pattern);
+        }
+
+        return normalizedPatterns;
+    }
+}
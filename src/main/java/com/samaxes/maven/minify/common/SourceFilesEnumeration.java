@@ -18,9 +18,11 @@
  */
 package com.samaxes.maven.minify.common;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.List;
@@ -37,8 +39,12 @@ public class SourceFilesEnumeration implements Enumeration<InputStream> {
 
     private List<File> files;
 
+    private Separator separator;
+
     private int current = 0;
 
+    private boolean terminatorPending;
+
     /**
      * Enumeration public constructor.
      *
@@ -47,7 +53,20 @@ public class SourceFilesEnumeration implements Enumeration<InputStream> {
      * @param debug show source file paths in log output
      */
     public SourceFilesEnumeration(Log log, List<File> files, boolean debug) {
+        this(log, files, debug, Separator.NONE);
+    }
+
+    /**
+     * Enumeration public constructor. The stream of each file is followed by the separator the file needs, if any.
+     *
+     * @param log Maven plugin log
+     * @param files list of files
+     * @param debug show source file paths in log output
+     * @param separator separator added after the files that do not end with a terminator
+     */
+    public SourceFilesEnumeration(Log log, List<File> files, boolean debug, Separator separator) {
         this.files = files;
+        this.separator = separator;
 
         for (File file : files) {
             log.info("Processing source file [" + ((debug) ? file.getPath() : file.getName()) + "].");
@@ -62,7 +81,7 @@ public class SourceFilesEnumeration implements Enumeration<InputStream> {
      */
     @Override
     public boolean hasMoreElements() {
-        return (current < files.size()) ? true : false;
+        return (current < files.size() || terminatorPending) ? true : false;
     }
 
     /**
@@ -77,9 +96,19 @@ public class SourceFilesEnumeration implements Enumeration<InputStream> {
 
         if (!hasMoreElements()) {
             throw new NoSuchElementException("No more files!");
+        } else if (terminatorPending) {
+            File previousElement = files.get(current - 1);
+            terminatorPending = false;
+
+            try {
+                is = new ByteArrayInputStream(separator.getTerminator(previousElement));
+            } catch (IOException e) {
+                throw new NoSuchElementException("The path [" + previousElement.getPath() + "] cannot be read.");
+            }
         } else {
             File nextElement = files.get(current);
             current++;
+            terminatorPending = separator != Separator.NONE;
 
             try {
                 is = new FileInputStream(nextElement);
@@ -0,0 +1,137 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes a <a href="https://docs.google.com/document/d/1U1RGAehQwRypUTovF1KRlpiOFze0b-_2gc6fAH0KY0k">version 3 source
+ * map</a>. Mappings are encoded and written as soon as they are added, so the map is never held in memory. They must be
+ * added in output order.
+ */
+public class SourceMapWriter implements Closeable {
+
+    private static final String BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private final Writer writer;
+
+    private int outputLine;
+
+    private int outputColumn;
+
+    private int source;
+
+    private int sourceLine;
+
+    private int sourceColumn;
+
+    private boolean firstSegment = true;
+
+    /**
+     * Source map writer constructor. Writes the map header.
+     *
+     * @param writer the writer to which the map is written
+     * @param file name of the generated file the map refers to
+     * @param sources source file names, relative to the map location
+     * @throws IOException if an I/O error occurs
+     */
+    public SourceMapWriter(Writer writer, String file, List<String> sources) throws IOException {
+        this.writer = writer;
+
+        writer.write("{\"version\":3,\"file\":");
+        writeString(file);
+        writer.write(",\"sources\":[");
+        for (int i = 0; i < sources.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeString(sources.get(i));
+        }
+        writer.write("],\"names\":[],\"mappings\":\"");
+    }
+
+    /**
+     * Adds a mapping. Lines and columns are zero-based.
+     *
+     * @param outputLine line in the generated file
+     * @param outputColumn column in the generated file
+     * @param source index of the source file in the map sources
+     * @param sourceLine line in the source file
+     * @param sourceColumn column in the source file
+     * @throws IOException if an I/O error occurs
+     */
+    public void addMapping(int outputLine, int outputColumn, int source, int sourceLine, int sourceColumn)
+            throws IOException {
+        if (outputLine < this.outputLine || (outputLine == this.outputLine && outputColumn < this.outputColumn)) {
+            throw new IllegalArgumentException("Mappings must be added in output order.");
+        }
+
+        if (outputLine > this.outputLine) {
+            for (; this.outputLine < outputLine; this.outputLine++) {
+                writer.write(';');
+            }
+            this.outputColumn = 0;
+        } else if (!firstSegment) {
+            writer.write(',');
+        }
+        firstSegment = false;
+
+        writeVLQ(outputColumn - this.outputColumn);
+        writeVLQ(source - this.source);
+        writeVLQ(sourceLine - this.sourceLine);
+        writeVLQ(sourceColumn - this.sourceColumn);
+
+        this.outputColumn = outputColumn;
+        this.source = source;
+        this.sourceLine = sourceLine;
+        this.sourceColumn = sourceColumn;
+    }
+
+    /**
+     * Writes the map footer and closes the underlying writer.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try (Writer out = writer) {
+            out.write("\"}\n");
+        }
+    }
+
+    private void writeVLQ(int value) throws IOException {
+        // The sign is stored in the least significant bit
+        int vlq = (value < 0) ? ((-value) << 1) + 1 : value << 1;
+        do {
+            int digit = vlq & 0x1F;
+            vlq >>>= 5;
+            if (vlq > 0) {
+                digit |= 0x20;
+            }
+            writer.write(BASE64_DIGITS.charAt(digit));
+        } while (vlq > 0);
+    }
+
+    private void writeString(String value) throws IOException {
+        writer.write(JsonWriter.quote(value));
+    }
+}
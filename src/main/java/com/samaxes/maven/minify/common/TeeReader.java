@@ -0,0 +1,126 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Reader that copies every character it reads to a writer. Used to write the merged file while the same characters are
+ * being consumed by the minifier, so the source files are only read once.
+ */
+public class TeeReader extends FilterReader {
+
+    private final Writer branch;
+
+    private boolean closed;
+
+    /**
+     * Tee reader constructor.
+     *
+     * @param in the reader to read from
+     * @param branch the writer to which the characters read are copied
+     */
+    public TeeReader(Reader in, Writer branch) {
+        super(in);
+        this.branch = branch;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c != -1) {
+            branch.write(c);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = super.read(cbuf, off, len);
+        if (n > 0) {
+            branch.write(cbuf, off, n);
+        }
+        return n;
+    }
+
+    /**
+     * Skipped characters are still copied to the writer.
+     *
+     * @param n the number of characters to skip
+     * @return the number of characters actually skipped
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        char[] buffer = new char[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Copies the characters that were not read yet to the writer, then closes both the reader and the writer.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            char[] buffer = new char[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Drain the remaining characters to the writer
+            }
+        } finally {
+            try {
+                in.close();
+            } finally {
+                branch.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Index of the names used by the web resources, such as the pages and the scripts, against which the class and id
+ * selectors of the stylesheets are matched to find the unused rules. Every word of the resources counts as a name,
+ * whether it appears in a {@code class} attribute, a script string or a comment, so that a name is only considered
+ * unused when it appears nowhere.
+ */
+public class TokenIndex {
+
+    private static final String SAFELIST_WILDCARD = "*";
+
+    private final Set<String> tokens;
+
+    private final Set<String> safelist = new HashSet<String>();
+
+    private final List<String> safelistPrefixes = new ArrayList<String>();
+
+    private String digest;
+
+    /**
+     * Init TokenIndex values.
+     *
+     * @param tokens the names used by the web resources
+     * @param safelist the names always considered used; an entry ending with {@code *} matches the names starting with
+     *        it
+     */
+    public TokenIndex(Set<String> tokens, List<String> safelist) {
+        this.tokens = tokens;
+        if (safelist != null) {
+            for (String name : safelist) {
+                name = name.trim();
+                if (name.endsWith(SAFELIST_WILDCARD)) {
+                    safelistPrefixes.add(name.substring(0, name.length() - SAFELIST_WILDCARD.length()));
+                } else if (!name.isEmpty()) {
+                    this.safelist.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index of the names used by the given files, scanning them on several threads.
+     *
+     * @param files the files to scan
+     * @param charset the charset of the files
+     * @param threads the maximum number of files scanned at the same time
+     * @param safelist the names always considered used
+     * @return the index
+     * @throws IOException when a file cannot be read
+     */
+    public static TokenIndex build(List<File> files, final Charset charset, int threads, List<String> safelist)
+            throws IOException {
+        Set<String> tokens = new HashSet<String>();
+
+        if (!files.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+            try {
+                List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>(files.size());
+                for (final File file : files) {
+                    futures.add(executor.submit(new Callable<Set<String>>() {
+
+                        @Override
+                        public Set<String> call() throws IOException {
+                            return scan(file, charset);
+                        }
+                    }));
+                }
+                for (Future<Set<String>> future : futures) {
+                    tokens.addAll(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while scanning the web resources.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        return new TokenIndex(tokens, safelist);
+    }
+
+    private static Set<String> scan(File file, Charset charset) throws IOException {
+        Set<String> tokens = new HashSet<String>();
+        StringBuilder token = new StringBuilder();
+
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset))) {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (isNameChar((char) c)) {
+                    token.append((char) c);
+                } else if (token.length() > 0) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Whether a character may be part of a CSS class or id name, escape sequences aside.
+     *
+     * @param c the character
+     * @return {@code true} if the character is a name character
+     */
+    public static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_'
+                || c >= 0x80;
+    }
+
+    /**
+     * Whether a name is used by the web resources or safelisted.
+     *
+     * @param name the class or id name
+     * @return {@code true} if the name is used
+     */
+    public boolean contains(String name) {
+        if (tokens.contains(name) || safelist.contains(name)) {
+            return true;
+        }
+        for (String prefix : safelistPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of names used by the web resources.
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Returns a digest of the indexed and safelisted names, which changes whenever the result of a pruning may change.
+     *
+     * @return the hexadecimal digest
+     */
+    public synchronized String getDigest() {
+        if (digest == null) {
+            MessageDigest messageDigest;
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-1 digest is not available.", e);
+            }
+
+            Charset charset = Charset.forName("UTF-8");
+            List<Set<String>> names = new ArrayList<Set<String>>();
+            names.add(new TreeSet<String>(tokens));
+            names.add(new TreeSet<String>(safelist));
+            names.add(new TreeSet<String>(safelistPrefixes));
+            for (Set<String> set : names) {
+                for (String name : set) {
+                    messageDigest.update(name.getBytes(charset));
+                    messageDigest.update((byte) 0);
+                }
+                messageDigest.update((byte) 1);
+            }
+            digest = BaseEncoding.base16().lowerCase().encode(messageDigest.digest());
+        }
+        return digest;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+/**
+ * Size budget of a bundle, configured with the {@code cssBudget} and {@code jsBudget} parameters or per bundle. Sizes
+ * are in bytes. Exceeding a warning size logs a warning, exceeding a failure size fails the build. Sizes left empty are
+ * not checked.
+ */
+public class Budget {
+
+    /**
+     * Total size of the source files above which a warning is logged.
+     */
+    private Long warnSourceSize;
+
+    /**
+     * Total size of the source files above which the build fails.
+     */
+    private Long failSourceSize;
+
+    /**
+     * Size of the final file, or of the minified files when the merge step is skipped, above which a warning is logged.
+     */
+    private Long warnMinifiedSize;
+
+    /**
+     * Size of the final file, or of the minified files when the merge step is skipped, above which the build fails.
+     */
+    private Long failMinifiedSize;
+
+    /**
+     * Gzipped size of the final file, or of the minified files when the merge step is skipped, above which a warning is
+     * logged.
+     */
+    private Long warnGzipSize;
+
+    /**
+     * Gzipped size of the final file, or of the minified files when the merge step is skipped, above which the build
+     * fails.
+     */
+    private Long failGzipSize;
+
+    /**
+     * Gets the warnSourceSize.
+     *
+     * @return the warnSourceSize
+     */
+    public Long getWarnSourceSize() {
+        return warnSourceSize;
+    }
+
+    /**
+     * Gets the failSourceSize.
+     *
+     * @return the failSourceSize
+     */
+    public Long getFailSourceSize() {
+        return failSourceSize;
+    }
+
+    /**
+     * Gets the warnMinifiedSize.
+     *
+     * @return the warnMinifiedSize
+     */
+    public Long getWarnMinifiedSize() {
+        return warnMinifiedSize;
+    }
+
+    /**
+     * Gets the failMinifiedSize.
+     *
+     * @return the failMinifiedSize
+     */
+    public Long getFailMinifiedSize() {
+        return failMinifiedSize;
+    }
+
+    /**
+     * Gets the warnGzipSize.
+     *
+     * @return the warnGzipSize
+     */
+    public Long getWarnGzipSize() {
+        return warnGzipSize;
+    }
+
+    /**
+     * Gets the failGzipSize.
+     *
+     * @return the failGzipSize
+     */
+    public Long getFailGzipSize() {
+        return failGzipSize;
+    }
+
+    /**
+     * Whether the gzipped size has to be known to check this budget.
+     *
+     * @return {@code true} if a gzipped size is configured
+     */
+    boolean hasGzipSize() {
+        return warnGzipSize != null || failGzipSize != null;
+    }
+}
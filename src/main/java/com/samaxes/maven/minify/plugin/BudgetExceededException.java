@@ -0,0 +1,36 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+/**
+ * Thrown when the sizes of a bundle exceed the failure sizes of its budget.
+ */
+public class BudgetExceededException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Budget exceeded exception constructor.
+     *
+     * @param message the detail message
+     */
+    public BudgetExceededException(String message) {
+        super(message);
+    }
+}
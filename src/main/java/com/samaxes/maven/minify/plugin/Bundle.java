@@ -0,0 +1,217 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+import java.util.ArrayList;
+
+import com.samaxes.maven.minify.common.Separator;
+import com.samaxes.maven.minify.plugin.MinifyMojo.Engine;
+
+/**
+ * A bundle of CSS or JavaScript source files merged and minified into a single final file, configured with the
+ * {@code bundles} parameter.
+ */
+public class Bundle {
+
+    /**
+     * Type of the bundle source files.
+     */
+    public static enum Type {
+        /** CSS files */
+        CSS,
+        /** JavaScript files */
+        JS;
+    }
+
+    /**
+     * Type of the bundle source files.
+     */
+    private Type type;
+
+    /**
+     * Source directory. Takes the same value as {@code cssSourceDir} or {@code jsSourceDir} when empty.
+     */
+    private String sourceDir;
+
+    /**
+     * Source file names list.
+     */
+    private ArrayList<String> sourceFiles = new ArrayList<String>();
+
+    /**
+     * Files to include. Specified as fileset patterns which are relative to the source directory.
+     */
+    private ArrayList<String> sourceIncludes = new ArrayList<String>();
+
+    /**
+     * Files to exclude. Specified as fileset patterns which are relative to the source directory.
+     */
+    private ArrayList<String> sourceExcludes = new ArrayList<String>();
+
+    /**
+     * Target directory. Takes the same value as {@code sourceDir} when empty.
+     */
+    private String targetDir;
+
+    /**
+     * Output file name.
+     */
+    private String finalFile;
+
+    /**
+     * Compressor engine to use. Takes the same value as {@code cssEngine} or {@code jsEngine} when empty.
+     */
+    private Engine engine;
+
+    /**
+     * Separator added between the merged source files. Takes the same value as {@code cssSeparator} or
+     * {@code jsSeparator} when empty.
+     */
+    private Separator separator;
+
+    /**
+     * Size budget of the bundle. Takes the same value as {@code cssBudget} or {@code jsBudget} when empty.
+     */
+    private Budget budget;
+
+    /**
+     * Bundle constructor used by Maven to inject the {@code bundles} parameter values.
+     */
+    public Bundle() {
+    }
+
+    /**
+     * Bundle constructor.
+     *
+     * @param type type of the bundle source files
+     * @param sourceDir source directory
+     * @param sourceFiles source file names list
+     * @param sourceIncludes files to include
+     * @param sourceExcludes files to exclude
+     * @param targetDir target directory
+     * @param finalFile output file name
+     * @param engine compressor engine to use
+     * @param separator separator added between the merged source files
+     * @param budget size budget of the bundle
+     */
+    Bundle(Type type, String sourceDir, ArrayList<String> sourceFiles, ArrayList<String> sourceIncludes,
+            ArrayList<String> sourceExcludes, String targetDir, String finalFile, Engine engine, Separator separator,
+            Budget budget) {
+        this.type = type;
+        this.sourceDir = sourceDir;
+        this.sourceFiles = sourceFiles;
+        this.sourceIncludes = sourceIncludes;
+        this.sourceExcludes = sourceExcludes;
+        this.targetDir = targetDir;
+        this.finalFile = finalFile;
+        this.engine = engine;
+        this.separator = separator;
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the type.
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the sourceDir.
+     *
+     * @return the sourceDir
+     */
+    public String getSourceDir() {
+        return sourceDir;
+    }
+
+    /**
+     * Gets the sourceFiles.
+     *
+     * @return the sourceFiles
+     */
+    public ArrayList<String> getSourceFiles() {
+        return sourceFiles;
+    }
+
+    /**
+     * Gets the sourceIncludes.
+     *
+     * @return the sourceIncludes
+     */
+    public ArrayList<String> getSourceIncludes() {
+        return sourceIncludes;
+    }
+
+    /**
+     * Gets the sourceExcludes.
+     *
+     * @return the sourceExcludes
+     */
+    public ArrayList<String> getSourceExcludes() {
+        return sourceExcludes;
+    }
+
+    /**
+     * Gets the targetDir.
+     *
+     * @return the targetDir
+     */
+    public String getTargetDir() {
+        return targetDir;
+    }
+
+    /**
+     * Gets the finalFile.
+     *
+     * @return the finalFile
+     */
+    public String getFinalFile() {
+        return finalFile;
+    }
+
+    /**
+     * Gets the engine.
+     *
+     * @return the engine
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Gets the separator.
+     *
+     * @return the separator
+     */
+    public Separator getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Gets the budget.
+     *
+     * @return the budget
+     */
+    public Budget getBudget() {
+        return budget;
+    }
+}
@@ -19,10 +19,16 @@
 package com.samaxes.maven.minify.plugin;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -39,7 +45,16 @@ import com.google.common.base.Strings;
 import com.google.javascript.jscomp.CompilationLevel;
 import com.google.javascript.jscomp.CompilerOptions.LanguageMode;
 import com.google.javascript.jscomp.SourceFile;
+import com.samaxes.maven.minify.common.AssetManifest;
+import com.samaxes.maven.minify.common.BuildCache;
+import com.samaxes.maven.minify.common.BuildMetrics;
+import com.samaxes.maven.minify.common.BundleMetrics;
 import com.samaxes.maven.minify.common.ClosureConfig;
+import com.samaxes.maven.minify.common.ClosureExternsCache;
+import com.samaxes.maven.minify.common.CssConfig;
+import com.samaxes.maven.minify.common.Separator;
+import com.samaxes.maven.minify.common.SourceFileIndex;
+import com.samaxes.maven.minify.common.TokenIndex;
 import com.samaxes.maven.minify.common.YuiConfig;
 
 /**
@@ -55,9 +70,16 @@ public class MinifyMojo extends AbstractMojo {
         /** YUI Compressor */
         YUI,
         /** Google Closure Compiler */
-        CLOSURE;
+        CLOSURE,
+        /** Streaming CSS minifier of the plugin */
+        NATIVE;
     }
 
+    /**
+     * Number of source files listed when reporting the growth of a bundle since the previous build.
+     */
+    private static final int MAX_REPORTED_SOURCE_FILES = 5;
+
     /* ************** */
     /* Global Options */
     /* ************** */
@@ -128,6 +150,122 @@ public class MinifyMojo extends AbstractMojo {
     @Parameter(property = "skipMinify", defaultValue = "false")
     private boolean skipMinify;
 
+    /**
+     * Write a gzipped copy of each minified file next to it, with the {@code .gz} extension. Allows web servers that
+     * support precompressed files, like nginx with {@code gzip_static}, to serve them without compressing at runtime.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "gzip", defaultValue = "false")
+    private boolean gzip;
+
+    /**
+     * Write a version 3 source map next to each minified file, with the {@code .map} extension, and reference it from
+     * the minified file. When the minify step is skipped, the source map is written next to the merged file instead.
+     * Source maps are supported for CSS files and for JavaScript files compressed with the Google Closure Compiler.
+     * When enabled, the Google Closure Compiler always compiles each source file as a separate input.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "sourceMap", defaultValue = "false")
+    private boolean sourceMap;
+
+    /**
+     * Add a digest of the contents to the final file names, e.g. {@code script.min.3fa9c1e2.js}, so that they can be
+     * served with far-future cache headers. The gzipped copy and the source map of a file follow its name. A manifest
+     * mapping the logical names to the content-hashed ones is written to {@code manifestFile}.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "contentHash", defaultValue = "false")
+    private boolean contentHash;
+
+    /**
+     * JSON manifest mapping the logical name of each final file to its content-hashed name, both relative to
+     * {@code webappTargetDir}. Relative paths are resolved against {@code webappTargetDir}. Only written when
+     * {@code contentHash} is enabled.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "manifestFile", defaultValue = "minify-manifest.json")
+    private String manifestFile;
+
+    /**
+     * Write the timings and sizes of every processed bundle to {@code metricsFile}: the time spent resolving, merging,
+     * minifying, compressing and caching its files, the size of each source file and the total source, minified and
+     * gzipped sizes.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "metrics", defaultValue = "false")
+    private boolean metrics;
+
+    /**
+     * JSON file the bundle metrics are written to. Only written when {@code metrics} is enabled.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "metricsFile", defaultValue = "${project.build.directory}/minify-metrics.json")
+    private File metricsFile;
+
+    /**
+     * Metrics file written by a previous build, e.g. a copy of {@code metricsFile} kept from the last release. When it
+     * exists, the source, minified and gzipped sizes of each bundle are compared with the previous ones, and the source
+     * files contributing the most to the growth of a bundle are reported.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "previousMetricsFile")
+    private File previousMetricsFile;
+
+    private AssetManifest assetManifest;
+
+    private BuildMetrics buildMetrics;
+
+    private BuildMetrics previousBuildMetrics;
+
+    private TokenIndex tokenIndex;
+
+    private SourceFileIndex tokenIndexSource;
+
+    private boolean previousBuildMetricsRead;
+
+    /**
+     * Maximum number of bundles processed concurrently, and of source files minified concurrently when the merge step
+     * is skipped. Defaults to the number of processors available to the Java virtual machine.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "minifyThreads")
+    private Integer minifyThreads;
+
+    /**
+     * Use the build cache. Tasks whose source files and configuration did not change since a previous build restore
+     * their output from {@code cacheDir} instead of merging and minifying the files again. Cache entries are tied to
+     * the version and the jar files of the plugin and its engines.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cache", defaultValue = "false")
+    private boolean cache;
+
+    /**
+     * Build cache directory.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cacheDir", defaultValue = "${project.build.directory}/minify-cache")
+    private File cacheDir;
+
+    /**
+     * Maximum size of the build cache, in megabytes. The least recently used entries are deleted at the end of each
+     * execution when the cache grows larger.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cacheMaxSize", defaultValue = "100")
+    private long cacheMaxSize;
+
     /**
      * Webapp source directory.
      */
@@ -191,6 +329,8 @@ public class MinifyMojo extends AbstractMojo {
      * Possible values are:
      * <ul>
      * <li>{@code YUI}: <a href="http://yui.github.io/yuicompressor/">YUI Compressor</a></li>
+     * <li>{@code NATIVE}: streaming minifier reading the merged source files once, with a memory use independent of
+     * their size. Removes comments and whitespace, drops the unit of zero lengths and shortens colors</li>
      * </ul>
      *
      * @since 1.7.1
@@ -198,6 +338,116 @@ public class MinifyMojo extends AbstractMojo {
     @Parameter(property = "cssEngine", defaultValue = "YUI")
     private Engine cssEngine;
 
+    /**
+     * Define the separator added between the merged CSS source files.<br/>
+     * Possible values are:
+     * <ul>
+     * <li>{@code NONE}: source files are concatenated as they are</li>
+     * <li>{@code NEWLINE}: a line break is added after the source files that do not end with one</li>
+     * </ul>
+     * {@code SEMICOLON} is rejected, as a semicolon after a rule would be read as part of the next rule selector and
+     * invalidate it. Only the last bytes of each source file are read to find out if it is terminated, so separators
+     * are only added when the {@code charset} is UTF-8 or a single-byte character set.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssSeparator", defaultValue = "NONE")
+    private Separator cssSeparator;
+
+    /**
+     * Size budget of the CSS bundles, in bytes:
+     * <ul>
+     * <li>{@code warnSourceSize} and {@code failSourceSize}: total size of the source files</li>
+     * <li>{@code warnMinifiedSize} and {@code failMinifiedSize}: size of the final file</li>
+     * <li>{@code warnGzipSize} and {@code failGzipSize}: gzipped size of the final file</li>
+     * </ul>
+     * A bundle over a warning size logs a warning, a bundle over a failure size fails the build. Sizes are taken from
+     * the files written by the plugin, so checking them only compresses the final file again when a gzipped size is
+     * configured but the file was not gzipped. Each bundle configured with the {@code bundles} parameter can override
+     * it.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssBudget")
+    private Budget cssBudget;
+
+    /**
+     * Optimize the structure of the merged CSS before minifying it: remove the rules repeated later in the same
+     * context, remove the declarations overridden later in the same rule, merge adjacent rules with the same selector
+     * or the same declarations and fold adjacent {@code @media} rules with the same query. A declaration is only
+     * removed when the later one has the same value, or when both values are plain CSS 2.1 ones, so fallbacks such as
+     * {@code display:-webkit-box} before {@code display:flex} are kept. The merged CSS is held in memory while it is
+     * optimized, and is minified as it is when it cannot be parsed. Skipped when source maps are enabled, as the
+     * optimized rules no longer match the source ones.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssOptimize", defaultValue = "false")
+    private boolean cssOptimize;
+
+    /**
+     * Remove the CSS rules whose selectors refer to a class or an id that appears nowhere in the web resources, before
+     * minifying. The web resources matching {@code cssPruneIncludes} are scanned once per execution, on
+     * {@code minifyThreads} threads, and every word they contain counts as a used name. Names built at runtime, e.g. by
+     * concatenating strings in a script, have to be listed in {@code cssPruneSafelist}. Skipped when source maps are
+     * enabled, as the remaining rules no longer match the source ones.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssPrune", defaultValue = "false")
+    private boolean cssPrune;
+
+    /**
+     * Web resources scanned for the names used by the pages, when pruning the CSS rules. Specified as fileset patterns
+     * which are relative to the webapp source directory. Defaults to the HTML, JSP, JSF and JavaScript files.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssPruneIncludes")
+    private ArrayList<String> cssPruneIncludes;
+
+    /**
+     * Web resources not scanned for the names used by the pages, when pruning the CSS rules. Specified as fileset
+     * patterns which are relative to the webapp source directory.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssPruneExcludes")
+    private ArrayList<String> cssPruneExcludes;
+
+    /**
+     * Class and id names whose rules are never pruned, e.g. {@code <cssPruneSafelist>active</cssPruneSafelist>}. A name
+     * ending with {@code *} keeps every name starting with it, e.g. {@code <cssPruneSafelist>js-*</cssPruneSafelist>}.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssPruneSafelist")
+    private ArrayList<String> cssPruneSafelist;
+
+    /**
+     * Rewrite the relative {@code url()} paths of the CSS source files while merging them, so that they still reference
+     * the same resources from the directory of the final file, e.g. {@code img/tab.png} in {@code css/widgets/tabs.css}
+     * becomes {@code widgets/img/tab.png} in {@code css/style.css}. Resources are expected at the same path in the
+     * webapp target directory as in the webapp source directory. URLs with a scheme or an absolute path, and the ones
+     * leading outside the webapp source directory, are kept.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssRewriteUrls", defaultValue = "false")
+    private boolean cssRewriteUrls;
+
+    /**
+     * Inline the images and fonts referenced by a relative {@code url()} of the CSS source files as base64
+     * {@code data:} URIs when their size is at most this number of bytes, saving a request per asset. URLs are resolved
+     * against the directory of the source file referencing them, and the ones with a query or a fragment, such as
+     * {@code font.eot?#iefix}, are kept. Each asset is encoded once per execution, however many stylesheets reference
+     * it. {@code 0} inlines no asset.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "cssInlineMaxSize", defaultValue = "0")
+    private int cssInlineMaxSize;
+
     /* ****************** */
     /* JavaScript Options */
     /* ****************** */
@@ -257,6 +507,32 @@ public class MinifyMojo extends AbstractMojo {
     @Parameter(property = "jsEngine", defaultValue = "YUI")
     private Engine jsEngine;
 
+    /**
+     * Define the separator added between the merged JavaScript source files, so that a file missing its trailing line
+     * break or semicolon does not change the meaning of the next one.<br/>
+     * Possible values are:
+     * <ul>
+     * <li>{@code NONE}: source files are concatenated as they are</li>
+     * <li>{@code NEWLINE}: a line break is added after the source files that do not end with one</li>
+     * <li>{@code SEMICOLON}: a line break and a semicolon are also added after the JavaScript source files whose last
+     * statement is not terminated by a semicolon</li>
+     * </ul>
+     * Only the last bytes of each source file are read to find out if it is terminated, so separators are only added
+     * when the {@code charset} is UTF-8 or a single-byte character set.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "jsSeparator", defaultValue = "NONE")
+    private Separator jsSeparator;
+
+    /**
+     * Size budget of the JavaScript bundles, in bytes. Takes the same sizes as {@code cssBudget}.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "jsBudget")
+    private Budget jsBudget;
+
     /* *************************** */
     /* YUI Compressor Only Options */
     /* *************************** */
@@ -380,6 +656,47 @@ public class MinifyMojo extends AbstractMojo {
     @Parameter(property = "closureExterns")
     private ArrayList<String> closureExterns;
 
+    /**
+     * Compile each source file as a separate Closure Compiler input, instead of a single input containing the merged
+     * source files. Errors are then reported against the original source file names and lines, and the compiler does
+     * not need the merged source at all. The merged file is still written when it is part of the output.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "closureSeparateInputs", defaultValue = "false")
+    private boolean closureSeparateInputs;
+
+    /* ******* */
+    /* Bundles */
+    /* ******* */
+
+    /**
+     * Additional bundles to process in the same execution, concurrently with the CSS and JavaScript files configured
+     * above. Each bundle defines its own source files and final file:
+     *
+     * <pre>
+     * &lt;bundles&gt;
+     *   &lt;bundle&gt;
+     *     &lt;type&gt;JS&lt;/type&gt;
+     *     &lt;sourceDir&gt;js/admin&lt;/sourceDir&gt;
+     *     &lt;sourceIncludes&gt;
+     *       &lt;sourceInclude&gt;**&#47;*.js&lt;/sourceInclude&gt;
+     *     &lt;/sourceIncludes&gt;
+     *     &lt;finalFile&gt;admin.js&lt;/finalFile&gt;
+     *     &lt;engine&gt;CLOSURE&lt;/engine&gt;
+     *   &lt;/bundle&gt;
+     * &lt;/bundles&gt;
+     * </pre>
+     *
+     * The {@code type} ({@code CSS} or {@code JS}) and {@code finalFile} values are required. The {@code sourceDir} and
+     * {@code engine} values default to the ones of the bundle type, and {@code targetDir} defaults to
+     * {@code sourceDir}.
+     *
+     * @since 1.7.3
+     */
+    @Parameter
+    private ArrayList<Bundle> bundles;
+
     /**
      * Executed when the goal is invoked, it will first invoke a parallel lifecycle, ending at the given phase.
      */
@@ -387,37 +704,276 @@ public class MinifyMojo extends AbstractMojo {
     public void execute() throws MojoExecutionException, MojoFailureException {
         checkDeprecatedOptions();
 
-        if (skipMerge && skipMinify) {
+        if (isSkipped()) {
             getLog().warn("Both merge and minify steps are configured to be skipped.");
             return;
         }
 
         fillOptionalValues();
+        processBundles(getAllBundles(), new SourceFileIndex());
+    }
+
+    /**
+     * Whether both the merge and the minify steps are configured to be skipped, in which case there is nothing to do.
+     *
+     * @return {@code true} if there is nothing to do
+     */
+    boolean isSkipped() {
+        return skipMerge && skipMinify;
+    }
+
+    /**
+     * Gets the webappSourceDir.
+     *
+     * @return the webappSourceDir
+     */
+    String getWebappSourceDir() {
+        return webappSourceDir;
+    }
+
+    /**
+     * Gets the webappTargetDir.
+     *
+     * @return the webappTargetDir
+     */
+    String getWebappTargetDir() {
+        return webappTargetDir;
+    }
+
+    /**
+     * Returns the bundles to process: the one configured with the top-level CSS options, the one configured with the
+     * top-level JavaScript options and the ones configured with the {@code bundles} parameter.
+     *
+     * @return the bundles to process
+     */
+    List<Bundle> getAllBundles() {
+        List<Bundle> allBundles = new ArrayList<Bundle>();
+        allBundles.add(new Bundle(Bundle.Type.CSS, cssSourceDir, cssSourceFiles, cssSourceIncludes, cssSourceExcludes,
+                cssTargetDir, cssFinalFile, cssEngine, cssSeparator, cssBudget));
+        allBundles.add(new Bundle(Bundle.Type.JS, jsSourceDir, jsSourceFiles, jsSourceIncludes, jsSourceExcludes,
+                jsTargetDir, jsFinalFile, jsEngine, jsSeparator, jsBudget));
+        allBundles.addAll(bundles);
+
+        return allBundles;
+    }
+
+    /**
+     * Returns the ordered source files of a bundle, as they would be processed now.
+     *
+     * @param bundle the bundle
+     * @param sourceFileIndex index of the source files
+     * @return the bundle source files
+     * @throws MojoExecutionException when the bundle configuration is invalid
+     */
+    List<File> getSourceFiles(Bundle bundle, SourceFileIndex sourceFileIndex) throws MojoExecutionException {
+        return createTask(bundle, null, null, null, null, null, null, sourceFileIndex).getFiles();
+    }
+
+    /**
+     * Merges and minifies the given bundles concurrently.
+     *
+     * @param bundlesToProcess the bundles to process
+     * @param sourceFileIndex index of the source files, shared by every bundle
+     * @throws MojoExecutionException when a bundle configuration is invalid
+     * @throws MojoFailureException when a bundle cannot be processed
+     */
+    void processBundles(List<Bundle> bundlesToProcess, SourceFileIndex sourceFileIndex) throws MojoExecutionException,
+            MojoFailureException {
         YuiConfig yuiConfig = fillYuiConfig();
+        CssConfig cssConfig = fillCssConfig(bundlesToProcess, sourceFileIndex);
         ClosureConfig closureConfig = fillClosureConfig();
+        BuildCache buildCache = (cache) ? new BuildCache(cacheDir) : null;
+        if (contentHash && assetManifest == null) {
+            // Kept across calls, so that processing some of the bundles again keeps the entries of the other ones
+            assetManifest = new AssetManifest(new File(webappTargetDir));
+        }
+        if (metrics && buildMetrics == null) {
+            buildMetrics = new BuildMetrics();
+        }
 
+        ExecutorService minifyExecutor = Executors.newFixedThreadPool(minifyThreads);
         Collection<ProcessFilesTask> processFilesTasks = new ArrayList<ProcessFilesTask>();
-        processFilesTasks.add(new ProcessCSSFilesTask(getLog(), debug, bufferSize, charset, suffix, nosuffix,
-                skipMerge, skipMinify, webappSourceDir, webappTargetDir, cssSourceDir, cssSourceFiles,
-                cssSourceIncludes, cssSourceExcludes, cssTargetDir, cssFinalFile, cssEngine, yuiConfig));
-        processFilesTasks.add(new ProcessJSFilesTask(getLog(), debug, bufferSize, charset, suffix, nosuffix, skipMerge,
-                skipMinify, webappSourceDir, webappTargetDir, jsSourceDir, jsSourceFiles, jsSourceIncludes,
-                jsSourceExcludes, jsTargetDir, jsFinalFile, jsEngine, yuiConfig, closureConfig));
-
-        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (Bundle bundle : bundlesToProcess) {
+            processFilesTasks.add(createTask(bundle, minifyExecutor, yuiConfig, cssConfig, closureConfig,
+                    buildCache, assetManifest, sourceFileIndex));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(processFilesTasks.size(), minifyThreads));
         try {
             List<Future<Object>> futures = executor.invokeAll(processFilesTasks);
+            BuildMetrics previousBuildMetrics = getPreviousBuildMetrics();
+            if (previousBuildMetrics != null) {
+                for (ProcessFilesTask processFilesTask : processFilesTasks) {
+                    logGrowth(processFilesTask.getMetrics(), previousBuildMetrics);
+                }
+            }
             for (Future<Object> future : futures) {
                 try {
                     future.get();
                 } catch (ExecutionException e) {
+                    if (e.getCause() instanceof BudgetExceededException) {
+                        throw new MojoFailureException(e.getCause().getMessage(), e.getCause());
+                    }
                     throw new MojoFailureException(e.getMessage(), e);
                 }
             }
-            executor.shutdown();
+            if (assetManifest != null) {
+                writeAssetManifest(assetManifest);
+            }
+            if (buildMetrics != null) {
+                for (ProcessFilesTask processFilesTask : processFilesTasks) {
+                    buildMetrics.put(processFilesTask.getMetrics());
+                }
+                writeBuildMetrics(buildMetrics);
+            }
         } catch (InterruptedException e) {
-            executor.shutdownNow();
             throw new MojoFailureException(e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+            minifyExecutor.shutdownNow();
+            evictCacheEntries(buildCache);
+        }
+    }
+
+    private ProcessFilesTask createTask(Bundle bundle, ExecutorService minifyExecutor, YuiConfig yuiConfig,
+            CssConfig cssConfig, ClosureConfig closureConfig, BuildCache buildCache, AssetManifest assetManifest,
+            SourceFileIndex sourceFileIndex) throws MojoExecutionException {
+        if (bundle.getType() == null || Strings.isNullOrEmpty(bundle.getFinalFile())) {
+            throw new MojoExecutionException("Each bundle must define its 'type' and 'finalFile'.");
+        }
+
+        boolean css = bundle.getType() == Bundle.Type.CSS;
+        String sourceDir = Strings.isNullOrEmpty(bundle.getSourceDir()) ? ((css) ? cssSourceDir : jsSourceDir)
+                : bundle.getSourceDir();
+        String targetDir = Strings.isNullOrEmpty(bundle.getTargetDir()) ? sourceDir : bundle.getTargetDir();
+        Engine engine = (bundle.getEngine() == null) ? ((css) ? cssEngine : jsEngine) : bundle.getEngine();
+        Separator separator = (bundle.getSeparator() == null) ? ((css) ? cssSeparator : jsSeparator) : bundle
+                .getSeparator();
+        Budget budget = (bundle.getBudget() == null) ? ((css) ? cssBudget : jsBudget) : bundle.getBudget();
+        if (css && separator == Separator.SEMICOLON) {
+            throw new MojoExecutionException("The separator 'SEMICOLON' is only supported by JavaScript bundles, "
+                    + "use 'NEWLINE' for the CSS bundle [" + bundle.getFinalFile() + "].");
+        }
+
+        try {
+            if (css) {
+                return new ProcessCSSFilesTask(getLog(), debug, bufferSize, charset, suffix, nosuffix, skipMerge,
+                        skipMinify, gzip, sourceMap, minifyExecutor, webappSourceDir, webappTargetDir, sourceDir,
+                        bundle.getSourceFiles(), bundle.getSourceIncludes(), bundle.getSourceExcludes(), targetDir,
+                        bundle.getFinalFile(), engine, separator, budget, yuiConfig, cssConfig, buildCache,
+                        assetManifest, sourceFileIndex);
+            }
+            return new ProcessJSFilesTask(getLog(), debug, bufferSize, charset, suffix, nosuffix, skipMerge,
+                    skipMinify, gzip, sourceMap, minifyExecutor, webappSourceDir, webappTargetDir, sourceDir,
+                    bundle.getSourceFiles(), bundle.getSourceIncludes(), bundle.getSourceExcludes(), targetDir,
+                    bundle.getFinalFile(), engine, separator, budget, yuiConfig, closureConfig, buildCache,
+                    assetManifest, sourceFileIndex);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to list the source files of the bundle [" + bundle.getFinalFile()
+                    + "].", e);
+        }
+    }
+
+    private void writeAssetManifest(AssetManifest assetManifest) throws MojoExecutionException {
+        File file = new File(manifestFile);
+        if (!file.isAbsolute()) {
+            file = new File(webappTargetDir, manifestFile);
+        }
+
+        try {
+            assetManifest.write(file);
+            getLog().info("Creating the asset manifest [" + ((debug) ? file.getPath() : file.getName()) + "].");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write the asset manifest [" + file + "].", e);
+        }
+    }
+
+    private void writeBuildMetrics(BuildMetrics buildMetrics) throws MojoExecutionException {
+        try {
+            buildMetrics.write(metricsFile);
+            getLog().info("Creating the metrics file [" + ((debug) ? metricsFile.getPath() : metricsFile.getName())
+                    + "].");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write the metrics file [" + metricsFile + "].", e);
+        }
+    }
+
+    private BuildMetrics getPreviousBuildMetrics() {
+        if (!previousBuildMetricsRead) {
+            // Read once, since the watch goal processes bundles many times against the same previous build
+            previousBuildMetricsRead = true;
+            if (previousMetricsFile != null && previousMetricsFile.isFile()) {
+                try {
+                    previousBuildMetrics = BuildMetrics.read(previousMetricsFile);
+                } catch (IOException e) {
+                    getLog().warn("Failed to read the previous metrics file [" + previousMetricsFile + "].", e);
+                }
+            }
+        }
+        return previousBuildMetrics;
+    }
+
+    private void logGrowth(BundleMetrics bundleMetrics, BuildMetrics previousBuildMetrics) {
+        BundleMetrics previousBundleMetrics = previousBuildMetrics.get(bundleMetrics.getName());
+        if (previousBundleMetrics == null || bundleMetrics.getOutputCount() == 0) {
+            return;
+        }
+
+        StringBuilder sizes = new StringBuilder("Size changes of the bundle [" + bundleMetrics.getName()
+                + "] since the previous build: ");
+        sizes.append(formatDelta(bundleMetrics.getInputSize() - previousBundleMetrics.getInputSize())).append(
+                " source, ");
+        sizes.append(formatDelta(bundleMetrics.getOutputSize() - previousBundleMetrics.getOutputSize())).append(
+                " minified");
+        if (bundleMetrics.getGzipSize() >= 0 && previousBundleMetrics.getGzipSize() >= 0) {
+            sizes.append(", ").append(formatDelta(bundleMetrics.getGzipSize() - previousBundleMetrics.getGzipSize()))
+                    .append(" gzipped");
+        }
+        getLog().info(sizes.append('.').toString());
+
+        // Contribution of each source file to the growth, largest growth first
+        Map<String, Long> sourceSizes = bundleMetrics.getSourceSizes();
+        Map<String, Long> previousSourceSizes = previousBundleMetrics.getSourceSizes();
+        List<Map.Entry<String, Long>> deltas = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, Long> source : sourceSizes.entrySet()) {
+            Long previousSize = previousSourceSizes.get(source.getKey());
+            long delta = source.getValue() - ((previousSize == null) ? 0 : previousSize);
+            if (delta != 0 || previousSize == null) {
+                deltas.add(new AbstractMap.SimpleEntry<String, Long>(source.getKey(), delta));
+            }
+        }
+        for (Map.Entry<String, Long> previousSource : previousSourceSizes.entrySet()) {
+            if (!sourceSizes.containsKey(previousSource.getKey())) {
+                deltas.add(new AbstractMap.SimpleEntry<String, Long>(previousSource.getKey(), -previousSource
+                        .getValue()));
+            }
+        }
+        Collections.sort(deltas, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return Long.compare(o2.getValue(), o1.getValue());
+            }
+        });
+
+        for (Map.Entry<String, Long> delta : deltas.subList(0, Math.min(deltas.size(), MAX_REPORTED_SOURCE_FILES))) {
+            String change = (!previousSourceSizes.containsKey(delta.getKey())) ? "added"
+                    : (!sourceSizes.containsKey(delta.getKey())) ? "removed" : "changed";
+            getLog().info("  " + formatDelta(delta.getValue()) + " " + delta.getKey() + " (" + change + ")");
+        }
+    }
+
+    private static String formatDelta(long delta) {
+        return ((delta > 0) ? "+" : "") + delta + " bytes";
+    }
+
+    private void evictCacheEntries(BuildCache buildCache) {
+        if (buildCache != null) {
+            try {
+                int evicted = buildCache.evict(cacheMaxSize * 1024 * 1024);
+                getLog().debug("Evicted " + evicted + " entries from the build cache.");
+            } catch (IOException e) {
+                getLog().warn("Failed to evict entries from the build cache.", e);
+            }
         }
     }
 
@@ -461,17 +1017,116 @@ public class MinifyMojo extends AbstractMojo {
         if (Strings.isNullOrEmpty(jsTargetDir)) {
             jsTargetDir = jsSourceDir;
         }
+        if (cssSourceFiles == null) {
+            cssSourceFiles = new ArrayList<String>();
+        }
+        if (cssSourceIncludes == null) {
+            cssSourceIncludes = new ArrayList<String>();
+        }
+        if (cssSourceExcludes == null) {
+            cssSourceExcludes = new ArrayList<String>();
+        }
+        if (jsSourceFiles == null) {
+            jsSourceFiles = new ArrayList<String>();
+        }
+        if (jsSourceIncludes == null) {
+            jsSourceIncludes = new ArrayList<String>();
+        }
+        if (jsSourceExcludes == null) {
+            jsSourceExcludes = new ArrayList<String>();
+        }
+        if (closureExterns == null) {
+            closureExterns = new ArrayList<String>();
+        }
+        if (bundles == null) {
+            bundles = new ArrayList<Bundle>();
+        }
+        if (minifyThreads == null || minifyThreads < 1) {
+            minifyThreads = Runtime.getRuntime().availableProcessors();
+        }
     }
 
     private YuiConfig fillYuiConfig() {
         return new YuiConfig(linebreak, munge, preserveAllSemiColons, disableOptimizations);
     }
 
-    private ClosureConfig fillClosureConfig() {
+    private CssConfig fillCssConfig(List<Bundle> bundlesToProcess, SourceFileIndex sourceFileIndex)
+            throws MojoExecutionException {
+        if (cssPrune && sourceMap && !skipMinify) {
+            getLog().warn("Skipping the CSS pruning, which is not supported with source maps.");
+        }
+        if (isCssPruned()) {
+            for (Bundle bundle : bundlesToProcess) {
+                if (bundle.getType() == Bundle.Type.CSS) {
+                    return new CssConfig(cssOptimize, getTokenIndex(sourceFileIndex), cssRewriteUrls,
+                            cssInlineMaxSize);
+                }
+            }
+        }
+        return new CssConfig(cssOptimize, null, cssRewriteUrls, cssInlineMaxSize);
+    }
+
+    /**
+     * Returns the index of the names used by the web resources, scanning them once per source file index, so once per
+     * execution or per change detected by the {@code watch} goal.
+     */
+    private TokenIndex getTokenIndex(SourceFileIndex sourceFileIndex) throws MojoExecutionException {
+        if (tokenIndex == null || tokenIndexSource != sourceFileIndex) {
+            List<File> files = getCssPruneFiles(sourceFileIndex);
+            try {
+                tokenIndex = TokenIndex.build(files, Charset.forName(charset), minifyThreads, cssPruneSafelist);
+                tokenIndexSource = sourceFileIndex;
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to scan the web resources for the CSS names they use.", e);
+            }
+            getLog().info("Found " + tokenIndex.size() + " names in " + files.size()
+                    + " web resources to prune the unused CSS rules.");
+        }
+        return tokenIndex;
+    }
+
+    /**
+     * Returns the web resources scanned for the names used by the pages, when pruning the CSS rules.
+     *
+     * @param sourceFileIndex index of the source files
+     * @return the web resources
+     * @throws MojoExecutionException when the web resources cannot be listed
+     */
+    List<File> getCssPruneFiles(SourceFileIndex sourceFileIndex) throws MojoExecutionException {
+        List<String> includes = cssPruneIncludes;
+        if (includes == null || includes.isEmpty()) {
+            includes = Arrays.asList("**/*.html", "**/*.htm", "**/*.xhtml", "**/*.jsp", "**/*.jspf", "**/*.tag",
+                    "**/*.js");
+        }
+        try {
+            return sourceFileIndex.getIncludedFiles(new File(webappSourceDir), includes,
+                    (cssPruneExcludes == null) ? Collections.<String> emptyList() : cssPruneExcludes);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to list the web resources scanned for the CSS names they use.",
+                    e);
+        }
+    }
+
+    /**
+     * Whether the unused CSS rules are pruned, in which case a change to a scanned web resource affects the CSS
+     * bundles.
+     *
+     * @return {@code true} if the unused CSS rules are pruned
+     */
+    boolean isCssPruned() {
+        return cssPrune && !skipMinify && !sourceMap;
+    }
+
+    private ClosureConfig fillClosureConfig() throws MojoExecutionException {
         List<SourceFile> externs = new ArrayList<>();
         for (String extern : closureExterns) {
-            externs.add(SourceFile.fromFile(webappSourceDir + File.separator + extern, Charset.forName(charset)));
+            File externFile = new File(webappSourceDir + File.separator + extern);
+            try {
+                externs.add(ClosureExternsCache.get(externFile, Charset.forName(charset)));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to read the Closure extern file [" + externFile + "].", e);
+            }
         }
-        return new ClosureConfig(closureLanguage, closureCompilationLevel, externs);
+        return new ClosureConfig(closureLanguage, closureCompilationLevel, externs, closureSeparateInputs);
     }
 }
@@ -18,18 +18,37 @@
  */
 package com.samaxes.maven.minify.plugin;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.text.ParseException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.logging.Log;
 
+import com.google.common.io.CharStreams;
+import com.samaxes.maven.minify.common.AssetManifest;
+import com.samaxes.maven.minify.common.BuildCache;
+import com.samaxes.maven.minify.common.CssConfig;
+import com.samaxes.maven.minify.common.CssMinifier;
+import com.samaxes.maven.minify.common.CssOptimizer;
+import com.samaxes.maven.minify.common.CssUrlReader;
+import com.samaxes.maven.minify.common.CssStatementScanner;
+import com.samaxes.maven.minify.common.DataUriCache;
+import com.samaxes.maven.minify.common.Separator;
+import com.samaxes.maven.minify.common.SourceFileIndex;
+import com.samaxes.maven.minify.common.SourceMapWriter;
 import com.samaxes.maven.minify.common.YuiConfig;
 import com.samaxes.maven.minify.plugin.MinifyMojo.Engine;
 import com.yahoo.platform.yui.compressor.CssCompressor;
@@ -39,6 +58,13 @@ import com.yahoo.platform.yui.compressor.CssCompressor;
  */
 public class ProcessCSSFilesTask extends ProcessFilesTask {
 
+    /**
+     * Scheme of an absolute URL, e.g. {@code http:} or {@code data:}.
+     */
+    private static final Pattern URL_SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+    private final CssConfig cssConfig;
+
     /**
      * Task constructor.
      *
@@ -51,6 +77,9 @@ public class ProcessCSSFilesTask extends ProcessFilesTask {
      * @param nosuffix whether to use a suffix for the minified file name or not
      * @param skipMerge whether to skip the merge step or not
      * @param skipMinify whether to skip the minify step or not
+     * @param gzip whether to write a gzipped copy of the minified files or not
+     * @param sourceMap whether to write a source map next to the output files or not
+     * @param minifyExecutor executor used to minify the source files concurrently when the merge step is skipped
      * @param webappSourceDir web resources source directory
      * @param webappTargetDir web resources target directory
      * @param inputDir directory containing source files
@@ -60,33 +89,220 @@ public class ProcessCSSFilesTask extends ProcessFilesTask {
      * @param outputDir directory to write the final file
      * @param outputFilename the output file name
      * @param engine minify processor engine selected
+     * @param separator separator added between the merged source files that do not end with a terminator
+     * @param budget size budget of the bundle, or {@code null} to not check its sizes
      * @param yuiConfig YUI Compressor configuration
+     * @param cssConfig CSS processing configuration
+     * @param buildCache cache of the files produced by previous builds, or {@code null} to always process the files
+     * @param assetManifest manifest of the content-hashed final files, or {@code null} to keep the final file names
+     * @param sourceFileIndex index of the source files shared by the tasks of an execution
+     * @throws IOException when a source directory cannot be listed
      */
     public ProcessCSSFilesTask(Log log, boolean verbose, Integer bufferSize, String charset, String suffix,
-            boolean nosuffix, boolean skipMerge, boolean skipMinify, String webappSourceDir, String webappTargetDir,
-            String inputDir, List<String> sourceFiles, List<String> sourceIncludes, List<String> sourceExcludes,
-            String outputDir, String outputFilename, Engine engine, YuiConfig yuiConfig) {
-        super(log, verbose, bufferSize, charset, suffix, nosuffix, skipMerge, skipMinify, webappSourceDir,
-                webappTargetDir, inputDir, sourceFiles, sourceIncludes, sourceExcludes, outputDir, outputFilename,
-                engine, yuiConfig);
+            boolean nosuffix, boolean skipMerge, boolean skipMinify, boolean gzip, boolean sourceMap,
+            ExecutorService minifyExecutor, String webappSourceDir, String webappTargetDir, String inputDir,
+            List<String> sourceFiles, List<String> sourceIncludes, List<String> sourceExcludes, String outputDir,
+            String outputFilename, Engine engine, Separator separator, Budget budget, YuiConfig yuiConfig,
+            CssConfig cssConfig, BuildCache buildCache, AssetManifest assetManifest, SourceFileIndex sourceFileIndex)
+            throws IOException {
+        super(log, verbose, bufferSize, charset, suffix, nosuffix, skipMerge, skipMinify, gzip, sourceMap,
+                minifyExecutor, webappSourceDir, webappTargetDir, inputDir, sourceFiles, sourceIncludes,
+                sourceExcludes, outputDir, outputFilename, engine, separator, budget, yuiConfig, buildCache,
+                assetManifest, sourceFileIndex);
+
+        this.cssConfig = cssConfig;
+    }
+
+    /**
+     * Adds the minify engine and the CSS processing configuration to the build cache key.
+     *
+     * @param key the build cache key
+     * @throws IOException when a file used by the engine configuration cannot be read
+     */
+    @Override
+    protected void updateCacheKey(BuildCache.Key key) throws IOException {
+        super.updateCacheKey(key);
+
+        key.update(cssConfig.isOptimize() && !sourceMap);
+        key.update((cssConfig.getTokenIndex() != null && !sourceMap) ? cssConfig.getTokenIndex().getDigest() : null);
+    }
+
+    /**
+     * Adds the URL filters of the source files to the build cache key: the position of each source file relative to
+     * its output directory when URLs are rewritten, and the assets that may be inlined, with the contents of the ones
+     * small enough to be inlined and the size of the other ones.
+     *
+     * @param key the build cache key
+     * @param sourceFiles the ordered source files
+     * @throws IOException when a source file or an asset cannot be read
+     */
+    @Override
+    protected void updateSourceCacheKey(final BuildCache.Key key, List<File> sourceFiles) throws IOException {
+        key.update(cssConfig.isRewriteUrls()).update(cssConfig.getInlineMaxSize());
+        if (cssConfig.isRewriteUrls()) {
+            for (File sourceFile : sourceFiles) {
+                key.update(getOutputRelativePath(sourceFile, getDirectoryPath(sourceFile)));
+            }
+        }
+        if (cssConfig.getInlineMaxSize() <= 0) {
+            return;
+        }
+
+        char[] buffer = new char[bufferSize];
+        for (final File sourceFile : sourceFiles) {
+            try (Reader reader = new CssUrlReader(new InputStreamReader(new FileInputStream(sourceFile), charset),
+                    new CssUrlReader.Rewriter() {
+                        @Override
+                        public String rewrite(String url) throws IOException {
+                            File asset = getAsset(sourceFile, url);
+                            if (asset != null) {
+                                key.update(url);
+                                if (asset.length() <= cssConfig.getInlineMaxSize()) {
+                                    key.update(asset, bufferSize);
+                                } else {
+                                    key.update(asset.length());
+                                }
+                            }
+                            return url;
+                        }
+                    })) {
+                while (reader.read(buffer) != -1) {
+                    // Only the referenced assets are needed
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean isSourceFiltered() {
+        return cssConfig.getInlineMaxSize() > 0 || cssConfig.isRewriteUrls();
+    }
+
+    /**
+     * Inlines the small assets referenced by the source file and rewrites its other relative URLs for the output
+     * directory, when enabled. URLs are only rewritten when the source file is not already at the position of its
+     * output directory.
+     *
+     * @param sourceFile the source file
+     * @param reader the reader of the source file
+     * @return the reader of the filtered source file
+     */
+    @Override
+    protected Reader filterSourceReader(final File sourceFile, Reader reader) {
+        String sourcePath = getOutputRelativePath(sourceFile, getDirectoryPath(sourceFile));
+        final boolean rewriteUrls = cssConfig.isRewriteUrls() && sourcePath != null && !sourcePath.isEmpty();
+        if (!rewriteUrls && cssConfig.getInlineMaxSize() <= 0) {
+            return reader;
+        }
+
+        return new CssUrlReader(reader, new CssUrlReader.Rewriter() {
+            @Override
+            public String rewrite(String url) throws IOException {
+                File asset = getAsset(sourceFile, url);
+                if (asset != null && asset.length() <= cssConfig.getInlineMaxSize()) {
+                    log.debug("Inlining the asset [" + url + "] of the file [" + sourceFile.getName() + "].");
+                    return cssConfig.getDataUriCache().get(asset);
+                }
+
+                return (rewriteUrls) ? rewriteUrl(sourceFile, url) : url;
+            }
+        });
+    }
+
+    /**
+     * Returns the asset referenced by a URL of a source file, if it is an image or a font that can be inlined. Only
+     * relative URLs without a query, a fragment or escape sequences are resolved, against the directory of the source
+     * file.
+     *
+     * @param sourceFile the source file
+     * @param url the URL
+     * @return the asset, or {@code null} if the URL does not reference an existing asset that can be inlined
+     */
+    private File getAsset(File sourceFile, String url) {
+        if (cssConfig.getInlineMaxSize() <= 0 || !isRelativeUrl(url) || url.indexOf('?') != -1
+                || url.indexOf('#') != -1 || url.indexOf('%') != -1 || url.indexOf('\\') != -1) {
+            return null;
+        }
+
+        File asset = new File(sourceFile.getParentFile(), url);
+        return (DataUriCache.getMediaType(asset) != null && asset.isFile()) ? asset : null;
+    }
+
+    /**
+     * Rewrites a relative URL of a source file so that it references the same web resource from the output directory.
+     * The query and the fragment of the URL are kept.
+     *
+     * @param sourceFile the source file
+     * @param url the URL
+     * @return the rewritten URL, or the given URL if it is not relative or references a resource outside the web
+     *         resources source directory
+     */
+    private String rewriteUrl(File sourceFile, String url) {
+        if (!isRelativeUrl(url) || url.startsWith("#") || url.indexOf('\\') != -1) {
+            return url;
+        }
+
+        int end = url.length();
+        for (char delimiter : new char[] { '?', '#' }) {
+            int index = url.indexOf(delimiter);
+            if (index != -1 && index < end) {
+                end = index;
+            }
+        }
+
+        String path;
+        try {
+            path = getOutputRelativePath(sourceFile, getDirectoryPath(sourceFile).resolve(url.substring(0, end))
+                    .normalize());
+        } catch (InvalidPathException e) {
+            path = null;
+        }
+        if (path == null || path.isEmpty()) {
+            return url;
+        }
+
+        log.debug("Rewriting the URL [" + url + "] of the file [" + sourceFile.getName() + "].");
+        return path + url.substring(end);
+    }
+
+    private static boolean isRelativeUrl(String url) {
+        return !url.isEmpty() && !url.startsWith("/") && !URL_SCHEME.matcher(url).find();
+    }
+
+    private static Path getDirectoryPath(File sourceFile) {
+        return sourceFile.getAbsoluteFile().getParentFile().toPath().normalize();
     }
 
     /**
      * Minifies a CSS file.
      *
-     * @param mergedFile input file resulting from the merged step
+     * @param sourceFiles the ordered source files
+     * @param mergedFile output file resulting from the merged step, or {@code null} when it should not be written
      * @param minifiedFile output file resulting from the minify step
+     * @param log log used to report the minify step progress
+     * @return the minified file, renamed with a digest of its contents when content hashing is enabled
      * @throws IOException when the minify step fails
      */
     @Override
-    protected void minify(File mergedFile, File minifiedFile) throws IOException {
-        try (InputStream in = new FileInputStream(mergedFile);
-                OutputStream out = new FileOutputStream(minifiedFile);
-                InputStreamReader reader = new InputStreamReader(in, charset);
+    protected File minify(List<File> sourceFiles, File mergedFile, File minifiedFile, Log log) throws IOException {
+        String sourceName = getSourceName(sourceFiles);
+        MessageDigest digest = newContentDigest();
+
+        try (Reader mergedReader = openMergedReader(sourceFiles, mergedFile, log);
+                OutputStream out = openOutputStream(minifiedFile, digest);
                 OutputStreamWriter writer = new OutputStreamWriter(out, charset)) {
             log.info("Creating the minified file [" + ((verbose) ? minifiedFile.getPath() : minifiedFile.getName())
                     + "].");
 
+            Reader reader = mergedReader;
+            if (cssConfig.isOptimize() || cssConfig.getTokenIndex() != null) {
+                if (sourceMap) {
+                    log.warn("Skipping the CSS optimizations, which are not supported with source maps.");
+                } else {
+                    reader = new StringReader(optimize(CharStreams.toString(mergedReader), sourceName, log));
+                }
+            }
+
             switch (engine) {
                 case YUI:
                     log.debug("Using YUI Compressor engine.");
@@ -94,15 +310,96 @@ public class ProcessCSSFilesTask extends ProcessFilesTask {
                     CssCompressor compressor = new CssCompressor(reader);
                     compressor.compress(writer, yuiConfig.getLinebreak());
                     break;
+                case NATIVE:
+                    log.debug("Using native CSS minifier engine.");
+
+                    new CssMinifier(reader, writer).minify();
+                    break;
                 default:
                     log.warn("CSS engine not supported.");
                     break;
             }
         } catch (IOException e) {
-            log.error("Failed to compress the CSS file [" + mergedFile.getName() + "].", e);
+            log.error("Failed to compress the CSS file [" + sourceName + "].", e);
             throw e;
         }
 
-        logCompressionGains(mergedFile, minifiedFile);
+        File outputFile = applyContentHash(minifiedFile, digest, log);
+        if (sourceMap) {
+            writeSourceMap(sourceFiles, outputFile, log);
+        }
+
+        return outputFile;
+    }
+
+    /**
+     * Optimizes the structure of a stylesheet and removes its unused rules before it is minified.
+     *
+     * @param css the stylesheet
+     * @param sourceName the name of the stylesheet, used in log messages
+     * @param log log used to report the optimization result
+     * @return the optimized stylesheet, or the stylesheet itself when it cannot be parsed
+     */
+    private String optimize(String css, String sourceName, Log log) {
+        try {
+            String optimizedCss = CssOptimizer.optimize(css, cssConfig);
+            log.debug("Optimized the CSS file [" + sourceName + "] from " + css.length() + " to "
+                    + optimizedCss.length() + " characters.");
+            return optimizedCss;
+        } catch (ParseException e) {
+            log.warn("Skipping the CSS optimizations of the file [" + sourceName + "], which cannot be parsed: "
+                    + e.getMessage());
+            return css;
+        }
+    }
+
+    /**
+     * Writes the source map of a minified file. The statements and declarations of the minified file are mapped, in
+     * order, to the ones of the source files.
+     *
+     * @param sourceFiles the ordered source files
+     * @param minifiedFile output file resulting from the minify step
+     * @param log log used to report the source map creation
+     * @throws IOException when the source map cannot be written
+     */
+    private void writeSourceMap(List<File> sourceFiles, File minifiedFile, Log log) throws IOException {
+        CssStatementScanner sourceStatements = new CssStatementScanner();
+        CssStatementScanner minifiedStatements = new CssStatementScanner();
+
+        try {
+            for (int i = 0; i < sourceFiles.size(); i++) {
+                try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sourceFiles.get(i)),
+                        charset), bufferSize)) {
+                    sourceStatements.scan(reader, i, true);
+                }
+            }
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(minifiedFile), charset),
+                    bufferSize)) {
+                minifiedStatements.scan(reader, 0, false);
+            }
+
+            boolean matching = sourceStatements.size() == minifiedStatements.size();
+            if (!matching) {
+                log.warn("Failed to match the minified file [" + minifiedFile.getName()
+                        + "] statements with the source files ones. The source map has no mappings.");
+            }
+
+            try (SourceMapWriter sourceMapWriter = openSourceMapWriter(sourceFiles, minifiedFile)) {
+                for (int i = 0; matching && i < minifiedStatements.size(); i++) {
+                    sourceMapWriter.addMapping(minifiedStatements.getLine(i), minifiedStatements.getColumn(i),
+                            sourceStatements.getSource(i), sourceStatements.getLine(i), sourceStatements.getColumn(i));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to create the source map [" + getSourceMapFile(minifiedFile).getName() + "].", e);
+            throw e;
+        }
+
+        appendSourceMappingURL(minifiedFile, log);
+    }
+
+    @Override
+    protected String getSourceMappingURLComment(String sourceMapName) {
+        return "/*# sourceMappingURL=" + sourceMapName + " */";
     }
 }
@@ -23,23 +23,59 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.maven.plugin.logging.Log;
-import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+import com.samaxes.maven.minify.common.AssetManifest;
+import com.samaxes.maven.minify.common.BufferedLog;
+import com.samaxes.maven.minify.common.BuildCache;
+import com.samaxes.maven.minify.common.BundleMetrics;
 import com.samaxes.maven.minify.common.FilenameComparator;
 import com.samaxes.maven.minify.common.SourceFilesEnumeration;
+import com.samaxes.maven.minify.common.Separator;
+import com.samaxes.maven.minify.common.SequenceReader;
+import com.samaxes.maven.minify.common.SourceFileIndex;
+import com.samaxes.maven.minify.common.SourceMapWriter;
+import com.samaxes.maven.minify.common.TeeReader;
 import com.samaxes.maven.minify.common.YuiConfig;
 import com.samaxes.maven.minify.plugin.MinifyMojo.Engine;
 
@@ -48,9 +84,25 @@ import com.samaxes.maven.minify.plugin.MinifyMojo.Engine;
  */
 public abstract class ProcessFilesTask implements Callable<Object> {
 
-    public static final String TEMP_SUFFIX = ".tmp";
+    private static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * Compression level of the gzipped files and sizes, the default level also used by web servers compressing at
+     * runtime, so that the reported sizes match the served ones.
+     */
+    private static final int GZIP_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private static final String SOURCE_MAP_EXTENSION = ".map";
+
+    private static final String CONTENT_DIGEST_ALGORITHM = "SHA-1";
 
-    protected final Log log;
+    private static final int CONTENT_HASH_LENGTH = 8;
+
+    private static final long MAX_MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    protected static final String SOURCE_MAP_CHARSET = "UTF-8";
+
+    protected final BufferedLog log;
 
     protected final boolean verbose;
 
@@ -66,22 +118,52 @@ public abstract class ProcessFilesTask implements Callable<Object> {
 
     protected final boolean skipMinify;
 
+    protected final boolean gzip;
+
+    protected final boolean sourceMap;
+
+    protected final ExecutorService minifyExecutor;
+
     protected final Engine engine;
 
+    private final Separator separator;
+
+    private final Budget budget;
+
     protected final YuiConfig yuiConfig;
 
+    protected final BuildCache buildCache;
+
+    protected final AssetManifest assetManifest;
+
     private final File sourceDir;
 
     private final File targetDir;
 
     private final String mergedFilename;
 
+    private final SourceFileIndex sourceFileIndex;
+
+    private final Path webappSourcePath;
+
+    private final Path webappTargetPath;
+
+    private final BundleMetrics metrics;
+
     private final List<File> files = new ArrayList<File>();
 
+    /**
+     * Normalized absolute paths of the source files, so that files listed and included under different paths, e.g.
+     * {@code ./a.js} and {@code a.js}, are only added once.
+     */
+    private final Set<Path> filePaths = new HashSet<Path>();
+
     private final boolean sourceFilesEmpty;
 
     private final boolean sourceIncludesEmpty;
 
+    private String engineCacheKey;
+
     /**
      * Task constructor.
      *
@@ -94,6 +176,9 @@ public abstract class ProcessFilesTask implements Callable<Object> {
      * @param nosuffix whether to use a suffix for the minified file name or not
      * @param skipMerge whether to skip the merge step or not
      * @param skipMinify whether to skip the minify step or not
+     * @param gzip whether to write a gzipped copy of the minified files or not
+     * @param sourceMap whether to write a source map next to the output files or not
+     * @param minifyExecutor executor used to minify the source files concurrently when the merge step is skipped
      * @param webappSourceDir web resources source directory
      * @param webappTargetDir web resources target directory
      * @param inputDir directory containing source files
@@ -103,13 +188,21 @@ public abstract class ProcessFilesTask implements Callable<Object> {
      * @param outputDir directory to write the final file
      * @param outputFilename the output file name
      * @param engine minify processor engine selected
+     * @param separator separator added between the merged source files that do not end with a terminator
+     * @param budget size budget of the bundle, or {@code null} to not check its sizes
      * @param yuiConfig YUI Compressor configuration
+     * @param buildCache cache of the files produced by previous builds, or {@code null} to always process the files
+     * @param assetManifest manifest of the content-hashed final files, or {@code null} to keep the final file names
+     * @param sourceFileIndex index of the source files shared by the tasks of an execution
+     * @throws IOException when a source directory cannot be listed
      */
     public ProcessFilesTask(Log log, boolean verbose, Integer bufferSize, String charset, String suffix,
-            boolean nosuffix, boolean skipMerge, boolean skipMinify, String webappSourceDir, String webappTargetDir,
-            String inputDir, List<String> sourceFiles, List<String> sourceIncludes, List<String> sourceExcludes,
-            String outputDir, String outputFilename, Engine engine, YuiConfig yuiConfig) {
-        this.log = log;
+            boolean nosuffix, boolean skipMerge, boolean skipMinify, boolean gzip, boolean sourceMap,
+            ExecutorService minifyExecutor, String webappSourceDir, String webappTargetDir, String inputDir,
+            List<String> sourceFiles, List<String> sourceIncludes, List<String> sourceExcludes, String outputDir,
+            String outputFilename, Engine engine, Separator separator, Budget budget, YuiConfig yuiConfig,
+            BuildCache buildCache, AssetManifest assetManifest, SourceFileIndex sourceFileIndex) throws IOException {
+        this.log = new BufferedLog(log);
         this.verbose = verbose;
         this.bufferSize = bufferSize;
         this.charset = charset;
@@ -117,89 +210,452 @@ public abstract class ProcessFilesTask implements Callable<Object> {
         this.nosuffix = nosuffix;
         this.skipMerge = skipMerge;
         this.skipMinify = skipMinify;
+        this.gzip = gzip;
+        this.sourceMap = sourceMap;
+        this.minifyExecutor = minifyExecutor;
         this.engine = engine;
+        this.separator = separator;
+        this.budget = budget;
         this.yuiConfig = yuiConfig;
+        this.buildCache = buildCache;
+        this.assetManifest = assetManifest;
 
+        long discoveryStart = System.nanoTime();
         this.sourceDir = new File(webappSourceDir + File.separator + inputDir);
         this.targetDir = new File(webappTargetDir + File.separator + outputDir);
         this.mergedFilename = outputFilename;
+        this.sourceFileIndex = sourceFileIndex;
+        this.webappSourcePath = getNormalizedPath(new File(webappSourceDir));
+        this.webappTargetPath = getNormalizedPath(new File(webappTargetDir));
+        this.metrics = new BundleMetrics(getRelativePath(webappTargetPath,
+                new File(targetDir, mergedFilename)), (this instanceof ProcessCSSFilesTask) ? "CSS" : "JS",
+                String.valueOf(engine));
         for (String sourceFilename : sourceFiles) {
             addNewSourceFile(mergedFilename, sourceFilename);
         }
         for (File sourceInclude : getFilesToInclude(sourceIncludes, sourceExcludes)) {
-            if (!files.contains(sourceInclude)) {
+            if (!filePaths.contains(getNormalizedPath(sourceInclude))) {
                 addNewSourceFile(mergedFilename, sourceInclude);
             }
         }
         this.sourceFilesEmpty = sourceFiles.isEmpty();
         this.sourceIncludesEmpty = sourceIncludes.isEmpty();
+        metrics.addDuration(BundleMetrics.Phase.DISCOVERY, System.nanoTime() - discoveryStart);
     }
 
     /**
-     * Method executed by the thread.
+     * Method executed by the thread. Log messages are buffered while the task runs and written at once when it ends.
      *
      * @throws IOException when the merge or minify steps fail
+     * @throws BudgetExceededException when the bundle sizes exceed the failure sizes of its budget
      */
     @Override
-    public Object call() throws IOException {
-        synchronized (log) {
+    public Object call() throws IOException, BudgetExceededException {
+        try {
             String fileType = (this instanceof ProcessCSSFilesTask) ? "CSS" : "JavaScript";
             log.info("Starting " + fileType + " task:");
 
             if (!files.isEmpty() && (targetDir.exists() || targetDir.mkdirs())) {
+                if (sourceMap && !skipMinify && !isSourceMapSupported()) {
+                    log.warn("Source maps are not supported by the " + engine + " engine for " + fileType
+                            + " files.");
+                }
                 if (skipMerge) {
                     log.info("Skipping the merge step...");
-                    String sourceBasePath = sourceDir.getAbsolutePath();
-
-                    for (File mergedFile : files) {
-                        // Create folders to preserve sub-directory structure when only minifying
-                        String originalPath = mergedFile.getAbsolutePath();
-                        String subPath = originalPath.substring(sourceBasePath.length(),
-                                originalPath.lastIndexOf(File.separator));
-                        File targetPath = new File(targetDir.getAbsolutePath() + subPath);
-                        targetPath.mkdirs();
-
-                        File minifiedFile = new File(targetPath, (nosuffix) ? mergedFile.getName()
-                                : FileUtils.basename(mergedFile.getName()) + suffix
-                                        + FileUtils.getExtension(mergedFile.getName()));
-                        minify(mergedFile, minifiedFile);
-                    }
+                    minifySourceFiles();
                 } else if (skipMinify) {
                     File mergedFile = new File(targetDir, mergedFilename);
-                    merge(mergedFile);
+                    List<File> outputFiles = getOutputFiles(mergedFile, null, false);
+                    String cacheKey = getCacheKey(files, outputFiles);
+                    if (!restoreFromCache(cacheKey, outputFiles, log)) {
+                        long mergeStart = System.nanoTime();
+                        File outputFile = merge(mergedFile);
+                        if (sourceMap) {
+                            writeMergedSourceMap(files, outputFile, log);
+                        }
+                        metrics.addDuration(BundleMetrics.Phase.MERGE, System.nanoTime() - mergeStart);
+                        metrics.addOutput(outputFile.length(), getGzipSizeForBudget(outputFile, log), false);
+                        storeInCache(cacheKey, getOutputFiles(outputFile, null, false), log);
+                    }
                     log.info("Skipping the minify step...");
                 } else {
-                    File mergedFile = new File(targetDir, (nosuffix) ? mergedFilename + TEMP_SUFFIX : mergedFilename);
-                    merge(mergedFile);
+                    // The merged file is only written when it is kept next to the minified file
+                    File mergedFile = (nosuffix) ? null : new File(targetDir, mergedFilename);
                     File minifiedFile = new File(targetDir, (nosuffix) ? mergedFilename
                             : FileUtils.basename(mergedFilename) + suffix + FileUtils.getExtension(mergedFilename));
-                    minify(mergedFile, minifiedFile);
-                    if (nosuffix) {
-                        if (!mergedFile.delete()) {
-                            mergedFile.deleteOnExit();
-                        }
+                    List<File> outputFiles = getOutputFiles(minifiedFile, mergedFile, true);
+                    String cacheKey = getCacheKey(files, outputFiles);
+                    if (!restoreFromCache(cacheKey, outputFiles, log)) {
+                        File outputFile = minifyAndLogGains(files, mergedFile, minifiedFile, log);
+                        storeInCache(cacheKey, getOutputFiles(outputFile, mergedFile, true), log);
                     }
                 }
+                checkBudget(log);
                 log.info("");
             } else if (!sourceFilesEmpty || !sourceIncludesEmpty) {
                 // 'files' list will be empty if source file paths or names added to the project's POM are invalid.
                 log.error("No valid " + fileType + " source files found to process.");
             }
+        } finally {
+            log.flush();
         }
 
         return null;
     }
 
+    /**
+     * Computes the build cache key of the output produced from a list of source files. The output file names and the
+     * source file paths relative to the output directory are part of the key, as the source maps and the source
+     * mapping URLs refer to them.
+     *
+     * @param sourceFiles the ordered source files
+     * @param outputFiles the output files, before content hashing
+     * @return the build cache key, or {@code null} when the build cache is disabled
+     * @throws IOException when a source file cannot be read
+     */
+    private String getCacheKey(List<File> sourceFiles, List<File> outputFiles) throws IOException {
+        if (buildCache == null) {
+            return null;
+        }
+
+        BuildCache.Key key = buildCache.newKey();
+        key.update(getClass().getName()).update(charset).update(skipMerge).update(skipMinify).update(nosuffix)
+                .update(gzip).update(GZIP_LEVEL).update(sourceMap).update(assetManifest != null).update(getSeparator());
+        for (File file : outputFiles) {
+            key.update(getRelativePath(webappTargetPath, file));
+        }
+        for (String source : getSourceMapSources(sourceFiles, outputFiles.get(0))) {
+            key.update(source);
+        }
+        for (File file : sourceFiles) {
+            key.update(file, bufferSize);
+        }
+        updateSourceCacheKey(key, sourceFiles);
+        if (!skipMinify) {
+            key.update(getEngineCacheKey());
+        }
+
+        return key.digest();
+    }
+
+    /**
+     * Computes the build cache key of the minify engine configuration once per task, since it is shared by every
+     * output of the task.
+     *
+     * @return the minify engine configuration key
+     * @throws IOException when a file used by the engine configuration cannot be read
+     */
+    private synchronized String getEngineCacheKey() throws IOException {
+        if (engineCacheKey == null) {
+            BuildCache.Key key = buildCache.newKey();
+            updateCacheKey(key);
+            engineCacheKey = key.digest();
+        }
+
+        return engineCacheKey;
+    }
+
+    /**
+     * Adds the minify engine and its configuration to the build cache key.
+     *
+     * @param key the build cache key
+     * @throws IOException when a file used by the engine configuration cannot be read
+     */
+    protected void updateCacheKey(BuildCache.Key key) throws IOException {
+        key.update(engine).update(yuiConfig.getLinebreak()).update(yuiConfig.isMunge())
+                .update(yuiConfig.isPreserveAllSemiColons()).update(yuiConfig.isDisableOptimizations());
+    }
+
+    /**
+     * Adds the files read along with the source files, and the configuration of the source filters, to the build cache
+     * key. Nothing is added by default.
+     *
+     * @param key the build cache key
+     * @param sourceFiles the ordered source files
+     * @throws IOException when a file read along with the source files cannot be read
+     */
+    protected void updateSourceCacheKey(BuildCache.Key key, List<File> sourceFiles) throws IOException {
+    }
+
+    /**
+     * Restores the output files from the build cache. The first output file, along with its gzipped copy and its
+     * source map, is then renamed with a digest of its contents when content hashing is enabled.
+     *
+     * @param cacheKey the build cache key, or {@code null} when the build cache is disabled
+     * @param outputFiles the files to restore
+     * @param log log used to report the restored files
+     * @return {@code true} if the output files were restored, {@code false} otherwise
+     */
+    private boolean restoreFromCache(String cacheKey, List<File> outputFiles, Log log) {
+        if (cacheKey == null) {
+            return false;
+        }
+
+        long restoreStart = System.nanoTime();
+        try {
+            if (buildCache.restore(cacheKey, outputFiles)) {
+                List<File> restoredFiles = applyContentHash(outputFiles);
+                File outputFile = restoredFiles.get(0);
+                File gzipFile = getGzipFile(outputFile);
+                metrics.addOutput(outputFile.length(), (restoredFiles.contains(gzipFile)) ? gzipFile.length()
+                        : getGzipSizeForBudget(outputFile, log), true);
+                for (File restoredFile : restoredFiles) {
+                    log.info("Restoring the file [" + ((verbose) ? restoredFile.getPath() : restoredFile.getName())
+                            + "] from the build cache.");
+                }
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to restore the output files from the build cache.", e);
+        } finally {
+            metrics.addDuration(BundleMetrics.Phase.WRITE, System.nanoTime() - restoreStart);
+        }
+
+        return false;
+    }
+
+    /**
+     * Renames restored output files with a digest of the first file contents, as they were named when they were
+     * written. The digest covers the contents written before the source mapping URL, which refers to the renamed
+     * source map and is appended once the file has been renamed.
+     *
+     * @param outputFiles the restored files, the final file first
+     * @return the renamed files, or the given files when content hashing is disabled
+     * @throws IOException when the files cannot be read or renamed
+     */
+    private List<File> applyContentHash(List<File> outputFiles) throws IOException {
+        MessageDigest digest = newContentDigest();
+        if (digest == null) {
+            return outputFiles;
+        }
+
+        File outputFile = outputFiles.get(0);
+        File gzipFile = getGzipFile(outputFile);
+        File sourceMapFile = getSourceMapFile(outputFile);
+        long length = outputFile.length();
+        if (outputFiles.contains(sourceMapFile)) {
+            // Hashes have a fixed length, so the source mapping URL length does not depend on the hash
+            File placeholderFile = getHashedFile(outputFile, Strings.repeat("0", CONTENT_HASH_LENGTH));
+            length -= ("\n" + getSourceMappingURLComment(getSourceMapFile(placeholderFile).getName()))
+                    .getBytes(charset).length;
+        }
+        try (InputStream in = ByteStreams.limit(new FileInputStream(outputFile), length)) {
+            byte[] buffer = new byte[bufferSize];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        File hashedFile = getHashedFile(outputFile, getContentHash(digest));
+        List<File> renamedFiles = new ArrayList<File>(outputFiles.size());
+        for (File file : outputFiles) {
+            File renamedFile = file;
+            if (file.equals(outputFile)) {
+                renamedFile = hashedFile;
+            } else if (file.equals(gzipFile)) {
+                renamedFile = getGzipFile(hashedFile);
+            } else if (file.equals(sourceMapFile)) {
+                renamedFile = getSourceMapFile(hashedFile);
+            }
+            if (!renamedFile.equals(file)) {
+                Files.move(file.toPath(), renamedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            renamedFiles.add(renamedFile);
+        }
+        assetManifest.put(outputFile, hashedFile);
+
+        return renamedFiles;
+    }
+
+    /**
+     * Stores the output files in the build cache.
+     *
+     * @param cacheKey the build cache key, or {@code null} when the build cache is disabled
+     * @param outputFiles the files to store
+     * @param log log used to report failures
+     */
+    private void storeInCache(String cacheKey, List<File> outputFiles, Log log) {
+        if (cacheKey != null) {
+            long storeStart = System.nanoTime();
+            try {
+                buildCache.store(cacheKey, outputFiles);
+            } catch (IOException e) {
+                log.warn("Failed to store the output files in the build cache.", e);
+            } finally {
+                metrics.addDuration(BundleMetrics.Phase.WRITE, System.nanoTime() - storeStart);
+            }
+        }
+    }
+
+    /**
+     * Minifies each source file individually, preserving the sub-directory structure. Files are minified concurrently
+     * by the {@code minifyExecutor} workers and files whose contents did not change are restored from the build cache.
+     * The log output of each file is written in the source files order and all failures are reported together once
+     * every file has been processed.
+     *
+     * @throws IOException when the minify step fails for one or more files
+     */
+    private void minifySourceFiles() throws IOException {
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(files.size());
+        List<BufferedLog> fileLogs = new ArrayList<BufferedLog>(files.size());
+
+        for (final File mergedFile : files) {
+            // Create folders to preserve sub-directory structure when only minifying
+            File targetPath = getOutputDir(mergedFile);
+            targetPath.mkdirs();
+
+            final File minifiedFile = new File(targetPath, (nosuffix) ? mergedFile.getName()
+                    : FileUtils.basename(mergedFile.getName()) + suffix
+                            + FileUtils.getExtension(mergedFile.getName()));
+            final BufferedLog fileLog = new BufferedLog(log);
+            fileLogs.add(fileLog);
+            futures.add(minifyExecutor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws IOException {
+                    List<File> outputFiles = getOutputFiles(minifiedFile, null, true);
+                    String cacheKey = getCacheKey(Collections.singletonList(mergedFile), outputFiles);
+                    if (!restoreFromCache(cacheKey, outputFiles, fileLog)) {
+                        File outputFile = minifyAndLogGains(Collections.singletonList(mergedFile), null,
+                                minifiedFile, fileLog);
+                        storeInCache(cacheKey, getOutputFiles(outputFile, null, true), fileLog);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        List<Throwable> errors = new ArrayList<Throwable>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                errors.add(e.getCause());
+            } catch (InterruptedException e) {
+                for (Future<Object> future : futures) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while minifying source files.");
+            } finally {
+                fileLogs.get(i).flush();
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            IOException exception = new IOException("Failed to minify " + errors.size() + " of " + files.size()
+                    + " source files.", errors.get(0));
+            for (Throwable error : errors.subList(1, errors.size())) {
+                exception.addSuppressed(error);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Checks the bundle sizes against its budget. Warnings are logged for the sizes exceeding their warning size, and
+     * errors for the ones exceeding their failure size.
+     *
+     * @param log log used to report the exceeded sizes
+     * @throws BudgetExceededException when a size exceeds its failure size
+     */
+    private void checkBudget(Log log) throws BudgetExceededException {
+        if (budget == null) {
+            return;
+        }
+
+        List<String> failures = new ArrayList<String>();
+        checkSize("source", metrics.getInputSize(), budget.getWarnSourceSize(), budget.getFailSourceSize(), failures,
+                log);
+        checkSize((skipMinify) ? "merged" : "minified", metrics.getOutputSize(), budget.getWarnMinifiedSize(),
+                budget.getFailMinifiedSize(), failures, log);
+        if (metrics.getGzipSize() >= 0) {
+            checkSize("gzipped", metrics.getGzipSize(), budget.getWarnGzipSize(), budget.getFailGzipSize(), failures,
+                    log);
+        }
+
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder("The bundle [" + metrics.getName() + "] exceeds its budget: ");
+            for (int i = 0; i < failures.size(); i++) {
+                message.append((i == 0) ? "" : ", ").append(failures.get(i));
+            }
+            throw new BudgetExceededException(message.append('.').toString());
+        }
+    }
+
+    private void checkSize(String name, long size, Long warnSize, Long failSize, List<String> failures, Log log) {
+        if (failSize != null && size > failSize) {
+            log.error("The " + name + " size of the bundle [" + metrics.getName() + "] is " + size
+                    + " bytes, over its failure size of " + failSize + " bytes.");
+            failures.add(name + " size " + size + " bytes > " + failSize + " bytes");
+        } else if (warnSize != null && size > warnSize) {
+            log.warn("The " + name + " size of the bundle [" + metrics.getName() + "] is " + size
+                    + " bytes, over its warning size of " + warnSize + " bytes.");
+        }
+    }
+
+    /**
+     * Computes the gzipped size of an output file, when it was not computed by the minify step and the bundle budget
+     * needs it: the output file was restored from the build cache without its gzipped copy, or it was only merged.
+     *
+     * @param file the output file
+     * @param log log used to report failures
+     * @return the gzipped size, or {@code -1} if it is not needed or could not be computed
+     */
+    private long getGzipSizeForBudget(File file, Log log) {
+        if (budget == null || !budget.hasGzipSize()) {
+            return -1;
+        }
+
+        try (InputStream in = new FileInputStream(file);
+                CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream())) {
+            try (GZIPOutputStream outGZIP = newGzipOutputStream(out)) {
+                IOUtil.copy(in, outGZIP, bufferSize);
+            }
+            return out.getCount();
+        } catch (IOException e) {
+            log.warn("Failed to calculate the gzipped size of the file [" + file.getName() + "].", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Minifies a list of source files, then logs the compression gains.
+     *
+     * @param sourceFiles the ordered source files
+     * @param mergedFile output file resulting from the merged step, or {@code null} when it should not be written
+     * @param minifiedFile output file resulting from the minify step
+     * @param log log used to report the minify step progress
+     * @return the minified file, renamed with a digest of its contents when content hashing is enabled
+     * @throws IOException when the minify step fails
+     */
+    private File minifyAndLogGains(List<File> sourceFiles, File mergedFile, File minifiedFile, Log log)
+            throws IOException {
+        long minifyStart = System.nanoTime();
+        File outputFile = minify(sourceFiles, mergedFile, minifiedFile, log);
+        metrics.addDuration(BundleMetrics.Phase.MINIFY, System.nanoTime() - minifyStart);
+
+        logCompressionGains(sourceFiles, outputFile, log);
+        return outputFile;
+    }
+
     /**
      * Merges a list of source files.
      *
      * @param mergedFile output file resulting from the merged step
+     * @return the merged file, renamed with a digest of its contents when content hashing is enabled
      * @throws IOException when the merge step fails
      */
-    protected void merge(File mergedFile) throws IOException {
-        try (InputStream sequence = new SequenceInputStream(new SourceFilesEnumeration(log, files, verbose));
-                OutputStream out = new FileOutputStream(mergedFile);
-                InputStreamReader sequenceReader = new InputStreamReader(sequence, charset);
+    protected File merge(File mergedFile) throws IOException {
+        MessageDigest digest = newContentDigest();
+
+        if (isByteCompatible(Charset.forName(charset)) && !isSourceFiltered()) {
+            transferSourceFiles(mergedFile, digest, separator);
+            return applyContentHash(mergedFile, digest, log);
+        }
+
+        try (Reader sequenceReader = openSourceFilesReader(files, log);
+                OutputStream out = openOutputStream(mergedFile, digest);
                 OutputStreamWriter outWriter = new OutputStreamWriter(out, charset)) {
             log.info("Creating the merged file [" + ((verbose) ? mergedFile.getPath() : mergedFile.getName()) + "].");
 
@@ -208,43 +664,529 @@ public abstract class ProcessFilesTask implements Callable<Object> {
             log.error("Failed to concatenate files.", e);
             throw e;
         }
+
+        return applyContentHash(mergedFile, digest, log);
+    }
+
+    /**
+     * Merges the source files by copying their bytes straight to the merged file, without decoding them. The file
+     * system copies the bytes itself when no content digest is computed; otherwise the source files are memory-mapped
+     * and each mapped region is both digested and written.
+     *
+     * @param mergedFile output file resulting from the merged step
+     * @param digest digest updated with the merged file contents, or {@code null}
+     * @param separator separator added after the source files that do not end with a terminator
+     * @throws IOException when the merge step fails
+     */
+    private void transferSourceFiles(File mergedFile, MessageDigest digest, Separator separator) throws IOException {
+        for (File file : files) {
+            log.info("Processing source file [" + ((verbose) ? file.getPath() : file.getName()) + "].");
+        }
+
+        try (FileOutputStream out = new FileOutputStream(mergedFile); FileChannel outChannel = out.getChannel()) {
+            log.info("Creating the merged file [" + ((verbose) ? mergedFile.getPath() : mergedFile.getName()) + "].");
+
+            for (File file : files) {
+                try (FileInputStream in = new FileInputStream(file); FileChannel inChannel = in.getChannel()) {
+                    long size = inChannel.size();
+                    long position = 0;
+                    while (position < size) {
+                        long count = Math.min(size - position, MAX_MAPPED_REGION_SIZE);
+                        if (digest == null) {
+                            count = inChannel.transferTo(position, count, outChannel);
+                        } else {
+                            MappedByteBuffer region = inChannel.map(FileChannel.MapMode.READ_ONLY, position, count);
+                            digest.update(region.duplicate());
+                            while (region.hasRemaining()) {
+                                outChannel.write(region);
+                            }
+                        }
+                        if (count <= 0) {
+                            // The source file was truncated while being copied
+                            break;
+                        }
+                        position += count;
+                    }
+                }
+
+                byte[] terminator = separator.getTerminator(file);
+                if (digest != null) {
+                    digest.update(terminator);
+                }
+                outChannel.write(ByteBuffer.wrap(terminator));
+            }
+        } catch (IOException e) {
+            log.error("Failed to concatenate files.", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the separator added between the merged source files. Separators are only added to files using an ASCII
+     * compatible character set, as the file terminators are looked for byte by byte.
+     *
+     * @return the separator to add
+     */
+    private Separator getSeparator() {
+        return (isByteCompatible(Charset.forName(charset))) ? separator : Separator.NONE;
+    }
+
+    /**
+     * Whether decoding then encoding valid text with a character set gives back the same bytes, so that files can be
+     * concatenated without decoding them. This holds for UTF-8 and for the single-byte character sets, but not for the
+     * ones writing a byte order mark, such as UTF-16.
+     *
+     * @param charset the character set
+     * @return {@code true} if the text can be copied byte by byte
+     */
+    private static boolean isByteCompatible(Charset charset) {
+        return "UTF-8".equals(charset.name()) || charset.newEncoder().maxBytesPerChar() == 1;
+    }
+
+    /**
+     * Returns the files written for an output file, in the order they are stored in the build cache.
+     *
+     * @param outputFile the final file, merged or minified
+     * @param mergedFile output file resulting from the merged step when it is written next to the minified file, or
+     *        {@code null}
+     * @param minified whether the final file is a minified file or not
+     * @return the output file first, followed by the other files written with it
+     */
+    private List<File> getOutputFiles(File outputFile, File mergedFile, boolean minified) {
+        List<File> outputFiles = new ArrayList<File>();
+
+        outputFiles.add(outputFile);
+        if (mergedFile != null) {
+            outputFiles.add(mergedFile);
+        }
+        if (minified && gzip) {
+            outputFiles.add(getGzipFile(outputFile));
+        }
+        if (sourceMap && (!minified || isSourceMapSupported())) {
+            outputFiles.add(getSourceMapFile(outputFile));
+        }
+
+        return outputFiles;
+    }
+
+    /**
+     * Creates the digest of a final file contents, computed while the file is written.
+     *
+     * @return a new digest, or {@code null} when content hashing is disabled
+     */
+    protected MessageDigest newContentDigest() {
+        if (assetManifest == null) {
+            return null;
+        }
+
+        try {
+            return MessageDigest.getInstance(CONTENT_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(CONTENT_DIGEST_ALGORITHM + " digest is not available.", e);
+        }
+    }
+
+    /**
+     * Opens an output stream to a final file, updating the digest of its contents as it is written.
+     *
+     * @param file the final file
+     * @param digest the digest of the file contents, or {@code null} when content hashing is disabled
+     * @return the output stream
+     * @throws IOException when the file cannot be created
+     */
+    protected OutputStream openOutputStream(File file, MessageDigest digest) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        return (digest == null) ? out : new DigestOutputStream(out, digest);
+    }
+
+    /**
+     * Renames a final file with a digest of its contents, e.g. {@code script.min.js} to
+     * {@code script.min.3fa9c1e2.js}, and adds it to the asset manifest.
+     *
+     * @param file the final file
+     * @param digest the digest of the file contents, or {@code null} when content hashing is disabled
+     * @param log log used to report the renamed file
+     * @return the renamed file, or the given file when content hashing is disabled
+     * @throws IOException when the file cannot be renamed
+     */
+    protected File applyContentHash(File file, MessageDigest digest, Log log) throws IOException {
+        if (digest == null) {
+            return file;
+        }
+
+        File hashedFile = getHashedFile(file, getContentHash(digest));
+
+        Files.move(file.toPath(), hashedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        log.info("Renaming the file [" + file.getName() + "] to [" + hashedFile.getName() + "].");
+        assetManifest.put(file, hashedFile);
+
+        return hashedFile;
+    }
+
+    private static String getContentHash(MessageDigest digest) {
+        return BaseEncoding.base16().lowerCase().encode(digest.digest()).substring(0, CONTENT_HASH_LENGTH);
+    }
+
+    private static File getHashedFile(File file, String hash) {
+        String extension = FileUtils.getExtension(file.getName());
+        return new File(file.getParentFile(), (extension.isEmpty()) ? file.getName() + "." + hash
+                : FileUtils.basename(file.getName()) + hash + "." + extension);
+    }
+
+    /**
+     * Opens a reader over the concatenation of a list of source files. When a merged file is given, every character
+     * read is also written to it, so that the merge and minify steps read the source files only once.
+     *
+     * @param sourceFiles the ordered source files
+     * @param mergedFile output file resulting from the merged step, or {@code null} when it should not be written
+     * @param log log used to report the merge step progress
+     * @return a reader over the merged source files
+     * @throws IOException when the merged file cannot be created
+     */
+    protected Reader openMergedReader(List<File> sourceFiles, File mergedFile, Log log) throws IOException {
+        Reader reader = openSourceFilesReader(sourceFiles, log);
+
+        if (mergedFile == null) {
+            return reader;
+        }
+
+        log.info("Creating the merged file [" + ((verbose) ? mergedFile.getPath() : mergedFile.getName()) + "].");
+        try {
+            return new TeeReader(reader, new OutputStreamWriter(new FileOutputStream(mergedFile), charset));
+        } catch (IOException e) {
+            reader.close();
+            log.error("Failed to concatenate files.", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a reader over the concatenation of a list of source files, each one filtered when the source files are.
+     *
+     * @param sourceFiles the ordered source files
+     * @param log log used to report the source files
+     * @return a reader over the merged source files
+     * @throws IOException when the charset is not supported
+     */
+    private Reader openSourceFilesReader(List<File> sourceFiles, Log log) throws IOException {
+        if (!isSourceFiltered()) {
+            return new InputStreamReader(new SequenceInputStream(new SourceFilesEnumeration(log, sourceFiles, verbose,
+                    getSeparator())), charset);
+        }
+
+        for (File file : sourceFiles) {
+            log.info("Processing source file [" + ((verbose) ? file.getPath() : file.getName()) + "].");
+        }
+        return new SequenceReader(new SourceReadersEnumeration(sourceFiles, getSeparator()));
+    }
+
+    /**
+     * Returns the directory where the output of a source file is written: the target directory, or the same
+     * sub-directory of the target directory as the source file one when the merge step is skipped.
+     *
+     * @param sourceFile the source file
+     * @return the output directory
+     */
+    protected File getOutputDir(File sourceFile) {
+        if (!skipMerge) {
+            return targetDir;
+        }
+
+        String originalPath = sourceFile.getAbsolutePath();
+        String subPath = originalPath.substring(sourceDir.getAbsolutePath().length(),
+                originalPath.lastIndexOf(File.separator));
+        return new File(targetDir.getAbsolutePath() + subPath);
+    }
+
+    /**
+     * Returns the path of a web resource relative to the output directory of a source file. Web resources are expected
+     * at the same path in the target directory as in the source directory.
+     *
+     * @param sourceFile the source file
+     * @param resource the normalized absolute path of the web resource in the source directory
+     * @return the relative path, with {@code /} separators, or {@code null} if the resource or the output directory is
+     *         outside the web resources directories
+     */
+    protected String getOutputRelativePath(File sourceFile, Path resource) {
+        Path outputPath = getNormalizedPath(getOutputDir(sourceFile));
+        if (!resource.startsWith(webappSourcePath) || !outputPath.startsWith(webappTargetPath)) {
+            return null;
+        }
+
+        // The output directory as it would be in the source directory
+        Path sourceOutputPath = webappSourcePath.resolve(webappTargetPath.relativize(outputPath));
+        return sourceOutputPath.relativize(resource).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Whether the source files are filtered while they are merged, in which case they are always decoded.
+     *
+     * @return {@code true} if {@link #filterSourceReader(File, Reader)} changes the source files
+     */
+    protected boolean isSourceFiltered() {
+        return false;
+    }
+
+    /**
+     * Filters a source file while it is merged. Source files are not filtered by default.
+     *
+     * @param sourceFile the source file
+     * @param reader the reader of the source file
+     * @return the reader of the filtered source file
+     */
+    protected Reader filterSourceReader(File sourceFile, Reader reader) {
+        return reader;
+    }
+
+    /**
+     * Writes the source map of a merged file, mapping each line of the merged file to the same line of its source
+     * file, and references it from the merged file.
+     *
+     * @param sourceFiles the ordered source files
+     * @param mergedFile output file resulting from the merged step
+     * @param log log used to report the source map creation
+     * @throws IOException when the source map cannot be written
+     */
+    private void writeMergedSourceMap(List<File> sourceFiles, File mergedFile, Log log) throws IOException {
+        File sourceMapFile = getSourceMapFile(mergedFile);
+
+        try (SourceMapWriter sourceMapWriter = openSourceMapWriter(sourceFiles, mergedFile)) {
+            Separator separator = getSeparator();
+            int outputLine = 0;
+            int outputColumn = 0;
+            for (int i = 0; i < sourceFiles.size(); i++) {
+                try (Reader reader = new InputStreamReader(new FileInputStream(sourceFiles.get(i)), charset)) {
+                    int sourceLine = 0;
+                    boolean lineStart = true;
+                    char[] buffer = new char[bufferSize];
+                    int n;
+                    while ((n = reader.read(buffer)) != -1) {
+                        for (int j = 0; j < n; j++) {
+                            if (lineStart) {
+                                sourceMapWriter.addMapping(outputLine, outputColumn, i, sourceLine, 0);
+                                lineStart = false;
+                            }
+                            if (buffer[j] == '\n') {
+                                outputLine++;
+                                outputColumn = 0;
+                                sourceLine++;
+                                lineStart = true;
+                            } else {
+                                outputColumn++;
+                            }
+                        }
+                    }
+                }
+                for (byte b : separator.getTerminator(sourceFiles.get(i))) {
+                    if (b == '\n') {
+                        outputLine++;
+                        outputColumn = 0;
+                    } else {
+                        outputColumn++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to create the source map [" + sourceMapFile.getName() + "].", e);
+            throw e;
+        }
+
+        appendSourceMappingURL(mergedFile, log);
+    }
+
+    /**
+     * Opens a writer for the source map of an output file. The map sources are the source files paths relative to the
+     * map location.
+     *
+     * @param sourceFiles the ordered source files
+     * @param outputFile the file the source map refers to
+     * @return the source map writer
+     * @throws IOException when the source map file cannot be created
+     */
+    protected SourceMapWriter openSourceMapWriter(List<File> sourceFiles, File outputFile) throws IOException {
+        File sourceMapFile = getSourceMapFile(outputFile);
+        OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(sourceMapFile), SOURCE_MAP_CHARSET);
+
+        try {
+            return new SourceMapWriter(writer, outputFile.getName(), getSourceMapSources(sourceFiles, outputFile));
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the paths of the source files relative to the source map of an output file, as used by the map sources.
+     *
+     * @param sourceFiles the ordered source files
+     * @param outputFile the file the source map refers to
+     * @return the relative paths of the source files, with forward slashes
+     */
+    protected List<String> getSourceMapSources(List<File> sourceFiles, File outputFile) {
+        Path sourceMapDir = outputFile.getAbsoluteFile().getParentFile().toPath();
+        List<String> sources = new ArrayList<String>(sourceFiles.size());
+
+        for (File sourceFile : sourceFiles) {
+            sources.add(sourceMapDir.relativize(sourceFile.getAbsoluteFile().toPath()).toString()
+                    .replace(File.separatorChar, '/'));
+        }
+
+        return sources;
+    }
+
+    /**
+     * Appends the comment referencing the source map at the end of an output file.
+     *
+     * @param outputFile the file the source map refers to
+     * @param log log used to report the source map creation
+     * @throws IOException when the comment cannot be appended
+     */
+    protected void appendSourceMappingURL(File outputFile, Log log) throws IOException {
+        File sourceMapFile = getSourceMapFile(outputFile);
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile, true), charset)) {
+            writer.write("\n");
+            writer.write(getSourceMappingURLComment(sourceMapFile.getName()));
+        }
+        log.info("Creating the source map [" + ((verbose) ? sourceMapFile.getPath() : sourceMapFile.getName()) + "].");
+    }
+
+    /**
+     * Returns the source map of an output file.
+     *
+     * @param file the output file
+     * @return the source map of the file
+     */
+    protected File getSourceMapFile(File file) {
+        return new File(file.getPath() + SOURCE_MAP_EXTENSION);
+    }
+
+    /**
+     * Whether source maps can be written for the minified files or not.
+     *
+     * @return {@code true} if the minify engine supports source maps, {@code false} otherwise
+     */
+    protected boolean isSourceMapSupported() {
+        return true;
+    }
+
+    /**
+     * Returns the comment referencing a source map, in the syntax of the processed files.
+     *
+     * @param sourceMapName the source map file name
+     * @return the comment referencing the source map
+     */
+    protected abstract String getSourceMappingURLComment(String sourceMapName);
+
+    /**
+     * Returns the ordered source files of the task.
+     *
+     * @return the source files
+     */
+    List<File> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Returns the timings and sizes recorded while the task runs.
+     *
+     * @return the task metrics
+     */
+    BundleMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * Minifies a source file.
+     * Returns the name used to identify a list of source files in the log and in error messages.
      *
-     * @param mergedFile input file resulting from the merged step
+     * @param sourceFiles the ordered source files
+     * @return the source file name when the merge step is skipped, the merged file name otherwise
+     */
+    protected String getSourceName(List<File> sourceFiles) {
+        return (skipMerge) ? sourceFiles.get(0).getName() : mergedFilename;
+    }
+
+    /**
+     * Minifies a list of source files as a single merged source.
+     *
+     * @param sourceFiles the ordered source files
+     * @param mergedFile output file resulting from the merged step, or {@code null} when it should not be written
      * @param minifiedFile output file resulting from the minify step
+     * @param log log used to report the minify step progress
+     * @return the minified file, renamed with a digest of its contents when content hashing is enabled
      * @throws IOException when the minify step fails
      */
-    abstract void minify(File mergedFile, File minifiedFile) throws IOException;
+    abstract File minify(List<File> sourceFiles, File mergedFile, File minifiedFile, Log log) throws IOException;
 
     /**
-     * Logs compression gains.
+     * Logs compression gains. The gzipped size is computed in memory, unless gzipped files are requested, in which case
+     * the gzipped copy of the minified file is written next to it.
      *
-     * @param mergedFile input file resulting from the merged step
+     * @param sourceFiles the source files of the minify step
      * @param minifiedFile output file resulting from the minify step
+     * @param log log used to report the compression gains
      */
-    void logCompressionGains(File mergedFile, File minifiedFile) {
-        try {
-            File temp = File.createTempFile(minifiedFile.getName(), ".gz");
+    void logCompressionGains(List<File> sourceFiles, File minifiedFile, Log log) {
+        File gzipFile = getGzipFile(minifiedFile);
+        long gzipStart = System.nanoTime();
+        long gzipSize = -1;
 
-            try (InputStream in = new FileInputStream(minifiedFile);
-                    OutputStream out = new FileOutputStream(temp);
-                    GZIPOutputStream outGZIP = new GZIPOutputStream(out)) {
+        try (InputStream in = new FileInputStream(minifiedFile);
+                CountingOutputStream out = new CountingOutputStream((gzip) ? new FileOutputStream(gzipFile)
+                        : ByteStreams.nullOutputStream())) {
+            try (GZIPOutputStream outGZIP = newGzipOutputStream(out)) {
                 IOUtil.copy(in, outGZIP, bufferSize);
             }
 
-            log.info("Uncompressed size: " + mergedFile.length() + " bytes.");
-            log.info("Compressed size: " + minifiedFile.length() + " bytes minified (" + temp.length()
-                    + " bytes gzipped).");
+            long uncompressedSize = 0;
+            for (File sourceFile : sourceFiles) {
+                uncompressedSize += sourceFile.length();
+            }
 
-            temp.deleteOnExit();
+            if (gzip) {
+                log.info("Creating the gzipped file [" + ((verbose) ? gzipFile.getPath() : gzipFile.getName()) + "].");
+            }
+            gzipSize = out.getCount();
+            log.info("Uncompressed size: " + uncompressedSize + " bytes.");
+            log.info("Compressed size: " + minifiedFile.length() + " bytes minified (" + out.getCount()
+                    + " bytes gzipped).");
         } catch (IOException e) {
-            log.debug("Failed to calculate the gzipped file size.", e);
+            if (gzip) {
+                log.error("Failed to create the gzipped file [" + gzipFile.getName() + "].", e);
+            } else {
+                log.debug("Failed to calculate the gzipped file size.", e);
+            }
+        } finally {
+            metrics.addDuration(BundleMetrics.Phase.GZIP, System.nanoTime() - gzipStart);
+            metrics.addOutput(minifiedFile.length(), gzipSize, false);
         }
     }
 
+    /**
+     * Creates a gzip stream compressing at {@link #GZIP_LEVEL}.
+     *
+     * @param out the stream to write the gzipped bytes to
+     * @return the gzip stream
+     * @throws IOException if an I/O error occurs
+     */
+    private GZIPOutputStream newGzipOutputStream(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, bufferSize) {
+            {
+                def.setLevel(GZIP_LEVEL);
+            }
+        };
+    }
+
+    /**
+     * Returns the gzipped copy of an output file.
+     *
+     * @param file the output file
+     * @return the gzipped copy of the file
+     */
+    private File getGzipFile(File file) {
+        return new File(file.getPath() + GZIP_EXTENSION);
+    }
+
     /**
      * Logs an addition of a new source file.
      *
@@ -264,45 +1206,97 @@ public abstract class ProcessFilesTask implements Callable<Object> {
      * @param sourceFile the source file
      */
     private void addNewSourceFile(String finalFilename, File sourceFile) {
-        if (sourceFile.exists()) {
+        if (sourceFileIndex.isFile(sourceFile)) {
             if (finalFilename.equalsIgnoreCase(sourceFile.getName())) {
                 log.warn("The source file [" + ((verbose) ? sourceFile.getPath() : sourceFile.getName())
                         + "] has the same name as the final file.");
             }
             log.debug("Adding source file [" + ((verbose) ? sourceFile.getPath() : sourceFile.getName()) + "].");
             files.add(sourceFile);
+            metrics.addSource(getRelativePath(webappSourcePath, sourceFile), sourceFileIndex.getSize(sourceFile));
+            filePaths.add(getNormalizedPath(sourceFile));
         } else {
             log.warn("The source file [" + ((verbose) ? sourceFile.getPath() : sourceFile.getName())
                     + "] does not exist.");
         }
     }
 
+    /**
+     * Returns the path of a file relative to a directory, with forward slashes.
+     *
+     * @param dir the normalized absolute directory path
+     * @param file the file
+     * @return the relative path
+     */
+    private static String getRelativePath(Path dir, File file) {
+        return dir.relativize(getNormalizedPath(file)).toString().replace(File.separatorChar, '/');
+    }
+
+    private static Path getNormalizedPath(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
     /**
      * Returns the files to copy. Default exclusions are used when the excludes list is empty.
      *
      * @param includes list of source files to include
      * @param excludes list of source files to exclude
      * @return the files to copy
+     * @throws IOException when the source directory cannot be listed
      */
-    private List<File> getFilesToInclude(List<String> includes, List<String> excludes) {
+    private List<File> getFilesToInclude(List<String> includes, List<String> excludes) throws IOException {
         List<File> includedFiles = new ArrayList<File>();
 
         if (includes != null && !includes.isEmpty()) {
-            DirectoryScanner scanner = new DirectoryScanner();
+            includedFiles.addAll(sourceFileIndex.getIncludedFiles(sourceDir, includes, excludes));
+            Collections.sort(includedFiles, new FilenameComparator());
+        }
+
+        return includedFiles;
+    }
 
-            scanner.setIncludes(includes.toArray(new String[0]));
-            scanner.setExcludes(excludes.toArray(new String[0]));
-            scanner.addDefaultExcludes();
-            scanner.setBasedir(sourceDir);
-            scanner.scan();
+    /**
+     * Readers of the filtered source files, each one followed by the separator it needs. Files are opened as they are
+     * reached.
+     */
+    private class SourceReadersEnumeration implements Enumeration<Reader> {
 
-            for (String includedFilename : scanner.getIncludedFiles()) {
-                includedFiles.add(new File(sourceDir, includedFilename));
-            }
+        private final List<File> sourceFiles;
 
-            Collections.sort(includedFiles, new FilenameComparator());
+        private final Separator separator;
+
+        private int current;
+
+        private boolean terminatorPending;
+
+        SourceReadersEnumeration(List<File> sourceFiles, Separator separator) {
+            this.sourceFiles = sourceFiles;
+            this.separator = separator;
         }
 
-        return includedFiles;
+        @Override
+        public boolean hasMoreElements() {
+            return current < sourceFiles.size() || terminatorPending;
+        }
+
+        @Override
+        public Reader nextElement() {
+            if (!hasMoreElements()) {
+                throw new NoSuchElementException("No more files!");
+            }
+
+            File file = sourceFiles.get((terminatorPending) ? current - 1 : current);
+            try {
+                if (terminatorPending) {
+                    terminatorPending = false;
+                    return new StringReader(new String(separator.getTerminator(file), charset));
+                }
+                current++;
+                terminatorPending = separator != Separator.NONE;
+                return filterSourceReader(file, new InputStreamReader(new FileInputStream(file), charset));
+            } catch (IOException e) {
+                throw new NoSuchElementException("The path [" + file.getPath() + "] cannot be read.");
+            }
+        }
     }
 }
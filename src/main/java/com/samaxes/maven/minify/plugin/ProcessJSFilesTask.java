@@ -19,24 +19,31 @@
 package com.samaxes.maven.minify.plugin;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.security.MessageDigest;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.maven.plugin.logging.Log;
 
-import com.google.common.collect.Lists;
 import com.google.javascript.jscomp.Compiler;
 import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceMap;
 import com.google.javascript.jscomp.SourceFile;
 import com.google.javascript.rhino.head.EvaluatorException;
+import com.samaxes.maven.minify.common.AssetManifest;
+import com.samaxes.maven.minify.common.BuildCache;
 import com.samaxes.maven.minify.common.ClosureConfig;
 import com.samaxes.maven.minify.common.JavaScriptErrorReporter;
+import com.samaxes.maven.minify.common.Separator;
+import com.samaxes.maven.minify.common.SourceFileIndex;
 import com.samaxes.maven.minify.common.YuiConfig;
 import com.samaxes.maven.minify.plugin.MinifyMojo.Engine;
 import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
@@ -60,6 +67,9 @@ public class ProcessJSFilesTask extends ProcessFilesTask {
      * @param nosuffix whether to use a suffix for the minified file name or not
      * @param skipMerge whether to skip the merge step or not
      * @param skipMinify whether to skip the minify step or not
+     * @param gzip whether to write a gzipped copy of the minified files or not
+     * @param sourceMap whether to write a source map next to the output files or not
+     * @param minifyExecutor executor used to minify the source files concurrently when the merge step is skipped
      * @param webappSourceDir web resources source directory
      * @param webappTargetDir web resources target directory
      * @param inputDir directory containing source files
@@ -69,32 +79,67 @@ public class ProcessJSFilesTask extends ProcessFilesTask {
      * @param outputDir directory to write the final file
      * @param outputFilename the output file name
      * @param engine minify processor engine selected
+     * @param separator separator added between the merged source files that do not end with a terminator
+     * @param budget size budget of the bundle, or {@code null} to not check its sizes
      * @param yuiConfig YUI Compressor configuration
      * @param closureConfig Google Closure Compiler configuration
+     * @param buildCache cache of the files produced by previous builds, or {@code null} to always process the files
+     * @param assetManifest manifest of the content-hashed final files, or {@code null} to keep the final file names
+     * @param sourceFileIndex index of the source files shared by the tasks of an execution
+     * @throws IOException when a source directory cannot be listed
      */
     public ProcessJSFilesTask(Log log, boolean verbose, Integer bufferSize, String charset, String suffix,
-            boolean nosuffix, boolean skipMerge, boolean skipMinify, String webappSourceDir, String webappTargetDir,
-            String inputDir, List<String> sourceFiles, List<String> sourceIncludes, List<String> sourceExcludes,
-            String outputDir, String outputFilename, Engine engine, YuiConfig yuiConfig, ClosureConfig closureConfig) {
-        super(log, verbose, bufferSize, charset, suffix, nosuffix, skipMerge, skipMinify, webappSourceDir,
-                webappTargetDir, inputDir, sourceFiles, sourceIncludes, sourceExcludes, outputDir, outputFilename,
-                engine, yuiConfig);
+            boolean nosuffix, boolean skipMerge, boolean skipMinify, boolean gzip, boolean sourceMap,
+            ExecutorService minifyExecutor, String webappSourceDir, String webappTargetDir, String inputDir,
+            List<String> sourceFiles, List<String> sourceIncludes, List<String> sourceExcludes, String outputDir,
+            String outputFilename, Engine engine, Separator separator, Budget budget, YuiConfig yuiConfig,
+            ClosureConfig closureConfig, BuildCache buildCache, AssetManifest assetManifest,
+            SourceFileIndex sourceFileIndex) throws IOException {
+        super(log, verbose, bufferSize, charset, suffix, nosuffix, skipMerge, skipMinify, gzip, sourceMap,
+                minifyExecutor, webappSourceDir, webappTargetDir, inputDir, sourceFiles, sourceIncludes,
+                sourceExcludes, outputDir, outputFilename, engine, separator, budget, yuiConfig, buildCache,
+                assetManifest, sourceFileIndex);
 
         this.closureConfig = closureConfig;
     }
 
+    /**
+     * Adds the minify engine and its configuration to the build cache key, including the Closure Compiler externs.
+     *
+     * @param key the build cache key
+     * @throws IOException when an extern file cannot be read
+     */
+    @Override
+    protected void updateCacheKey(BuildCache.Key key) throws IOException {
+        super.updateCacheKey(key);
+
+        if (engine == Engine.CLOSURE) {
+            key.update(closureConfig.getLanguage()).update(closureConfig.getCompilationLevel())
+                    .update(closureConfig.isSeparateInputs());
+            for (SourceFile extern : closureConfig.getExterns()) {
+                key.update(extern.getName()).update(extern.getCode());
+            }
+        }
+    }
+
     /**
      * Minifies a JavaScript file.
      *
-     * @param mergedFile input file resulting from the merged step
+     * @param sourceFiles the ordered source files
+     * @param mergedFile output file resulting from the merged step, or {@code null} when it should not be written
      * @param minifiedFile output file resulting from the minify step
+     * @param log log used to report the minify step progress
+     * @return the minified file, renamed with a digest of its contents when content hashing is enabled
      * @throws IOException when the minify step fails
      */
     @Override
-    protected void minify(File mergedFile, File minifiedFile) throws IOException {
-        try (InputStream in = new FileInputStream(mergedFile);
-                OutputStream out = new FileOutputStream(minifiedFile);
-                InputStreamReader reader = new InputStreamReader(in, charset);
+    protected File minify(List<File> sourceFiles, File mergedFile, File minifiedFile, Log log) throws IOException {
+        String sourceName = getSourceName(sourceFiles);
+        MessageDigest digest = newContentDigest();
+        SourceMap closureSourceMap = null;
+
+        try (Reader reader = openMergedReader(sourceFiles, mergedFile, log);
+                OutputStream out = openOutputStream(minifiedFile, digest);
                 OutputStreamWriter writer = new OutputStreamWriter(out, charset)) {
             log.info("Creating the minified file [" + ((verbose) ? minifiedFile.getPath() : minifiedFile.getName())
                     + "].");
@@ -108,23 +153,46 @@ public class ProcessJSFilesTask extends ProcessFilesTask {
                     options.setOutputCharset(charset);
                     options.setLanguageIn(closureConfig.getLanguage());
 
-                    SourceFile input = SourceFile.fromInputStream(mergedFile.getName(), in);
+                    if (sourceMap) {
+                        File sourceMapFile = getSourceMapFile(minifiedFile);
+                        List<String> sources = getSourceMapSources(sourceFiles, minifiedFile);
+                        List<SourceMap.LocationMapping> locationMappings = new ArrayList<SourceMap.LocationMapping>();
+                        for (int i = 0; i < sourceFiles.size(); i++) {
+                            locationMappings.add(new SourceMap.LocationMapping(sourceFiles.get(i).getPath(),
+                                    sources.get(i)));
+                        }
+                        options.setSourceMapOutputPath(sourceMapFile.getPath());
+                        options.setSourceMapFormat(SourceMap.Format.V3);
+                        options.setSourceMapDetailLevel(SourceMap.DetailLevel.ALL);
+                        options.setSourceMapLocationMappings(locationMappings);
+                    }
+
+                    List<SourceFile> inputs = new ArrayList<SourceFile>();
+                    if (closureConfig.isSeparateInputs() || sourceMap) {
+                        // The merged reader is not consumed, closing it still writes the merged file when requested
+                        for (File sourceFile : sourceFiles) {
+                            inputs.add(SourceFile.fromFile(sourceFile, Charset.forName(charset)));
+                        }
+                    } else {
+                        inputs.add(SourceFile.fromReader(sourceName, reader));
+                    }
                     List<SourceFile> externs = closureConfig.getExterns();
 
                     Compiler compiler = new Compiler();
-                    compiler.compile(externs, Lists.newArrayList(input), options);
+                    compiler.compile(externs, inputs, options);
 
                     if (compiler.hasErrors()) {
-                        throw new EvaluatorException(compiler.getErrors()[0].description);
+                        throw new EvaluatorException(compiler.getErrors()[0].toString());
                     }
 
                     writer.append(compiler.toSource());
+                    closureSourceMap = compiler.getSourceMap();
                     break;
                 case YUI:
                     log.debug("Using YUI Compressor engine.");
 
                     JavaScriptCompressor compressor = new JavaScriptCompressor(reader, new JavaScriptErrorReporter(log,
-                            mergedFile.getName()));
+                            sourceName));
                     compressor.compress(writer, yuiConfig.getLinebreak(), yuiConfig.isMunge(), verbose,
                             yuiConfig.isPreserveAllSemiColons(), yuiConfig.isDisableOptimizations());
                     break;
@@ -133,10 +201,36 @@ public class ProcessJSFilesTask extends ProcessFilesTask {
                     break;
             }
         } catch (IOException e) {
-            log.error("Failed to compress the JavaScript file [" + mergedFile.getName() + "].", e);
+            log.error("Failed to compress the JavaScript file [" + sourceName + "].", e);
             throw e;
         }
 
-        logCompressionGains(mergedFile, minifiedFile);
+        File outputFile = applyContentHash(minifiedFile, digest, log);
+        if (closureSourceMap != null) {
+            // Written once the minified file has its final name, which is part of the source map
+            File sourceMapFile = getSourceMapFile(outputFile);
+            try (Writer sourceMapWriter = new OutputStreamWriter(new FileOutputStream(sourceMapFile),
+                    SOURCE_MAP_CHARSET)) {
+                closureSourceMap.appendTo(sourceMapWriter, outputFile.getName());
+            }
+            appendSourceMappingURL(outputFile, log);
+        }
+
+        return outputFile;
+    }
+
+    /**
+     * Source maps are only supported by the Google Closure Compiler.
+     *
+     * @return {@code true} if the Google Closure Compiler is used, {@code false} otherwise
+     */
+    @Override
+    protected boolean isSourceMapSupported() {
+        return engine == Engine.CLOSURE;
+    }
+
+    @Override
+    protected String getSourceMappingURLComment(String sourceMapName) {
+        return "//# sourceMappingURL=" + sourceMapName;
     }
 }
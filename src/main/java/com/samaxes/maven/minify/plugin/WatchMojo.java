@@ -0,0 +1,257 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.samaxes.maven.minify.common.SourceFileIndex;
+
+/**
+ * Goal for combining and minifying CSS and JavaScript files, then doing it again for the bundles affected by each
+ * change to the web resources source directory, until the build is interrupted.
+ *
+ * @since 1.7.3
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class WatchMojo extends MinifyMojo {
+
+    /**
+     * Time to wait for further changes before processing the affected bundles, in milliseconds. Editors and version
+     * control tools usually write several files in a row, which are then processed together.
+     *
+     * @since 1.7.3
+     */
+    @Parameter(property = "watchDelay", defaultValue = "300")
+    private long watchDelay;
+
+    /**
+     * Executed when the goal is invoked, it will first invoke a parallel lazy processing of all bundles, then watch the
+     * web resources source directory for changes.
+     *
+     * @throws MojoExecutionException if an unexpected problem occurs
+     * @throws MojoFailureException if an expected problem occurs
+     */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        super.execute();
+
+        if (isSkipped()) {
+            return;
+        }
+
+        Path sourceDir = Paths.get(getWebappSourceDir()).toAbsolutePath().normalize();
+        Path targetDir = Paths.get(getWebappTargetDir()).toAbsolutePath().normalize();
+
+        Map<Bundle, Set<Path>> bundleFiles = new LinkedHashMap<Bundle, Set<Path>>();
+        SourceFileIndex sourceFileIndex = new SourceFileIndex();
+        for (Bundle bundle : getAllBundles()) {
+            bundleFiles.put(bundle, getSourcePaths(bundle, sourceFileIndex));
+        }
+        Set<Path> pruneFiles = (isCssPruned()) ? getCssPrunePaths(sourceFileIndex) : new HashSet<Path>();
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Set<Path> changedFiles = new HashSet<Path>();
+            register(watchService, sourceDir, targetDir, changedFiles);
+            getLog().info("Watching [" + sourceDir + "] for changes.");
+
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                boolean overflow = false;
+                changedFiles.clear();
+
+                // Collect the events until no change happens for the configured delay
+                while (watchKey != null) {
+                    overflow |= pollEvents(watchService, watchKey, sourceDir, targetDir, changedFiles);
+                    watchKey.reset();
+                    watchKey = watchService.poll(watchDelay, TimeUnit.MILLISECONDS);
+                }
+
+                List<Bundle> affectedBundles = new ArrayList<Bundle>();
+                sourceFileIndex = new SourceFileIndex();
+
+                // Pruned CSS bundles are affected by the web resources that may start or stop using their rules
+                boolean pruneFilesChanged = false;
+                if (isCssPruned()) {
+                    Set<Path> currentPruneFiles = getCssPrunePaths(sourceFileIndex);
+                    pruneFilesChanged = containsAny(pruneFiles, changedFiles)
+                            || containsAny(currentPruneFiles, changedFiles);
+                    pruneFiles = currentPruneFiles;
+                }
+                for (Map.Entry<Bundle, Set<Path>> entry : bundleFiles.entrySet()) {
+                    Set<Path> sourcePaths = getSourcePaths(entry.getKey(), sourceFileIndex);
+
+                    // A bundle is affected by its current source files and by the ones it no longer includes
+                    if (overflow || containsAny(entry.getValue(), changedFiles)
+                            || containsAny(sourcePaths, changedFiles)
+                            || (pruneFilesChanged && entry.getKey().getType() == Bundle.Type.CSS)) {
+                        affectedBundles.add(entry.getKey());
+                    }
+                    entry.setValue(sourcePaths);
+                }
+
+                if (!affectedBundles.isEmpty()) {
+                    getLog().info(
+                            "Processing " + affectedBundles.size() + " of " + bundleFiles.size()
+                                    + " bundles after changes to " + changedFiles + ".");
+                    processAffectedBundles(affectedBundles, sourceFileIndex);
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to watch [" + sourceDir + "] for changes.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Processes the affected bundles. Failures are logged but do not stop the goal, so that the next change can fix
+     * them.
+     *
+     * @param affectedBundles the bundles to process
+     * @param sourceFileIndex index of the source files
+     * @throws MojoExecutionException if a bundle configuration is invalid
+     */
+    private void processAffectedBundles(List<Bundle> affectedBundles, SourceFileIndex sourceFileIndex)
+            throws MojoExecutionException {
+        try {
+            processBundles(affectedBundles, sourceFileIndex);
+        } catch (MojoFailureException e) {
+            getLog().error(e.getMessage(), e.getCause());
+        }
+    }
+
+    private Set<Path> getSourcePaths(Bundle bundle, SourceFileIndex sourceFileIndex) throws MojoExecutionException {
+        Set<Path> sourcePaths = new HashSet<Path>();
+        for (File file : getSourceFiles(bundle, sourceFileIndex)) {
+            sourcePaths.add(file.toPath().toAbsolutePath().normalize());
+        }
+        return sourcePaths;
+    }
+
+    private Set<Path> getCssPrunePaths(SourceFileIndex sourceFileIndex) throws MojoExecutionException {
+        Set<Path> prunePaths = new HashSet<Path>();
+        for (File file : getCssPruneFiles(sourceFileIndex)) {
+            prunePaths.add(file.toPath().toAbsolutePath().normalize());
+        }
+        return prunePaths;
+    }
+
+    private static boolean containsAny(Set<Path> paths, Set<Path> changedFiles) {
+        for (Path changedFile : changedFiles) {
+            if (paths.contains(changedFile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the files changed by the events of a watch key.
+     *
+     * @return {@code true} if events were lost, in which case any file may have changed
+     */
+    private boolean pollEvents(WatchService watchService, WatchKey watchKey, Path sourceDir, Path targetDir,
+            Set<Path> changedFiles) throws IOException {
+        boolean overflow = false;
+
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+
+            Path path = ((Path) watchKey.watchable()).resolve((Path) event.context());
+            if (isTargetPath(path, sourceDir, targetDir)) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                // Directories created after the goal started are watched too, along with the files they already hold
+                register(watchService, path, targetDir, changedFiles);
+            } else {
+                changedFiles.add(path);
+            }
+        }
+
+        return overflow;
+    }
+
+    /**
+     * Watches a directory and its subdirectories, except the output ones.
+     */
+    private void register(final WatchService watchService, final Path directory, final Path targetDir,
+            final Set<Path> changedFiles) throws IOException {
+        final Path sourceDir = Paths.get(getWebappSourceDir()).toAbsolutePath().normalize();
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (isTargetPath(dir, sourceDir, targetDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!directory.equals(sourceDir)) {
+                    changedFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Whether a path belongs to the web resources target directory. Changes to the files written by the goal itself
+     * must not trigger a new processing. Both directories are the same when the final files are written next to the
+     * source files, in which case only the bundle source files patterns tell them apart.
+     */
+    private static boolean isTargetPath(Path path, Path sourceDir, Path targetDir) {
+        return !targetDir.equals(sourceDir) && !sourceDir.startsWith(targetDir) && path.startsWith(targetDir);
+    }
+}
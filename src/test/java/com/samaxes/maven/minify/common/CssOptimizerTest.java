@@ -0,0 +1,77 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+
+import org.junit.Test;
+
+/**
+ * Tests the removal of overridden declarations by {@link CssOptimizer}.
+ */
+public class CssOptimizerTest {
+
+    private static final CssConfig OPTIMIZE = new CssConfig(true, null, false, 0);
+
+    private static String optimize(String css) throws ParseException {
+        return CssOptimizer.optimize(css, OPTIMIZE);
+    }
+
+    @Test
+    public void keepsVendorPrefixedFallbacks() throws ParseException {
+        String css = ".a{display:-webkit-box;display:-ms-flexbox;display:flex}";
+        assertEquals(css, optimize(css));
+    }
+
+    @Test
+    public void keepsFallbackBeforeGrid() throws ParseException {
+        String css = ".a{display:block;display:grid}";
+        assertEquals(css, optimize(css));
+    }
+
+    @Test
+    public void keepsFallbackBeforeSticky() throws ParseException {
+        String css = ".a{position:relative;position:sticky}";
+        assertEquals(css, optimize(css));
+    }
+
+    @Test
+    public void keepsStandardValueBeforeProprietaryOne() throws ParseException {
+        String css = ".a{cursor:pointer;cursor:hand}";
+        assertEquals(css, optimize(css));
+    }
+
+    @Test
+    public void removesIdenticalDeclaration() throws ParseException {
+        assertEquals(".a{display:flex}", optimize(".a{display:flex;display:flex}"));
+    }
+
+    @Test
+    public void removesDeclarationOverriddenEverywhere() throws ParseException {
+        assertEquals(".a{margin:0 auto;color:#fff}", optimize(".a{margin:10px;color:red;margin:0 auto;color:#fff}"));
+    }
+
+    @Test
+    public void keepsDeclarationWithDifferentImportance() throws ParseException {
+        String css = ".a{color:red!important;color:blue}";
+        assertEquals(css, optimize(css));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Minify Maven Plugin
+ * https://github.com/samaxes/minify-maven-plugin
+ *
+ * Copyright (c) 2009 samaxes.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.samaxes.maven.minify.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+import com.samaxes.maven.minify.common.CssConfig;
+import com.samaxes.maven.minify.common.Separator;
+import com.samaxes.maven.minify.common.SourceFileIndex;
+import com.samaxes.maven.minify.common.YuiConfig;
+import com.samaxes.maven.minify.plugin.MinifyMojo.Engine;
+
+/**
+ * Tests that the CSS and JavaScript tasks of an execution run at the same time, while their log output stays readable.
+ */
+public class ProcessFilesTaskTest {
+
+    private static final String CHARSET = "UTF-8";
+
+    private File webappDir;
+
+    @Before
+    public void setUp() throws IOException {
+        webappDir = Files.createTempDir();
+        File cssDir = new File(webappDir, "css");
+        File jsDir = new File(webappDir, "js");
+        cssDir.mkdirs();
+        jsDir.mkdirs();
+        Files.write(".a { color: red; }\n", new File(cssDir, "a.css"), Charset.forName(CHARSET));
+        Files.write(".b { margin: 0px; }\n", new File(cssDir, "b.css"), Charset.forName(CHARSET));
+        Files.write("var a = 1;\n", new File(jsDir, "a.js"), Charset.forName(CHARSET));
+        Files.write("var b = a + 1;\n", new File(jsDir, "b.js"), Charset.forName(CHARSET));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(webappDir);
+    }
+
+    @Test
+    public void runsTasksConcurrentlyWithWholeLogBlocks() throws Exception {
+        RecordingLog log = new RecordingLog();
+        SourceFileIndex sourceFileIndex = new SourceFileIndex();
+        YuiConfig yuiConfig = new YuiConfig(-1, true, false, false);
+        List<String> noIncludes = Collections.emptyList();
+
+        ProcessFilesTask cssTask = new ProcessCSSFilesTask(log, false, 4096, CHARSET, "min", false, false, false,
+                false, false, null, webappDir.getPath(), webappDir.getPath(), "css", Arrays.asList("a.css", "b.css"),
+                noIncludes, noIncludes, "css", "style.css", Engine.YUI, Separator.NONE, null, yuiConfig,
+                new CssConfig(false, null, false, 0), null, null, sourceFileIndex);
+        ProcessFilesTask jsTask = new ProcessJSFilesTask(log, false, 4096, CHARSET, "min", false, false, false, false,
+                false, null, webappDir.getPath(), webappDir.getPath(), "js", Arrays.asList("a.js", "b.js"), noIncludes,
+                noIncludes, "js", "script.js", Engine.YUI, Separator.NONE, null, yuiConfig, null, null, null,
+                sourceFileIndex);
+        log.arm();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Object>> futures = executor.invokeAll(Arrays.asList(cssTask, jsTask), 60, TimeUnit.SECONDS);
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue("The tasks did not run at the same time", log.overlapped);
+        assertTrue(new File(webappDir, "css/style.min.css").isFile());
+        assertTrue(new File(webappDir, "js/script.min.js").isFile());
+
+        // Each task writes all its messages in a single block, from its own thread
+        List<List<String>> blocks = new ArrayList<List<String>>();
+        String previousThread = null;
+        for (int i = 0; i < log.messages.size(); i++) {
+            if (!log.threads.get(i).equals(previousThread)) {
+                previousThread = log.threads.get(i);
+                blocks.add(new ArrayList<String>());
+            }
+            blocks.get(blocks.size() - 1).add(log.messages.get(i));
+        }
+        assertEquals(2, blocks.size());
+        String firstTask = (blocks.get(0).contains("Starting CSS task:")) ? "CSS" : "JavaScript";
+        String secondTask = (firstTask.equals("CSS")) ? "JavaScript" : "CSS";
+        assertTrue(blocks.get(0).contains("Starting " + firstTask + " task:"));
+        assertTrue(blocks.get(1).contains("Starting " + secondTask + " task:"));
+    }
+
+    /**
+     * Log recording the messages it receives along with the thread writing them. Once armed, the first query of each
+     * thread waits for another thread to make one, which only happens when both tasks run at the same time.
+     */
+    private static class RecordingLog extends SystemStreamLog {
+
+        private final List<String> messages = new ArrayList<String>();
+
+        private final List<String> threads = new ArrayList<String>();
+
+        private final CyclicBarrier barrier = new CyclicBarrier(2);
+
+        private final ThreadLocal<Boolean> waited = new ThreadLocal<Boolean>();
+
+        private volatile boolean armed;
+
+        private volatile boolean overlapped;
+
+        void arm() {
+            armed = true;
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            if (armed && waited.get() == null) {
+                waited.set(Boolean.TRUE);
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                    overlapped = true;
+                } catch (Exception e) {
+                    // The other task did not start while this one was running
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void debug(CharSequence content) {
+            record(content);
+        }
+
+        @Override
+        public void info(CharSequence content) {
+            record(content);
+        }
+
+        @Override
+        public void warn(CharSequence content) {
+            record(content);
+        }
+
+        @Override
+        public void error(CharSequence content) {
+            record(content);
+        }
+
+        private synchronized void record(CharSequence content) {
+            messages.add(String.valueOf(content));
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+}